@@ -0,0 +1,58 @@
+package net.example.openeffect;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 位置計算（LineLayout）。追従のたびに update 1回＋行数分の linePos が呼ばれる。
+ * 水平オフセットの有無と、毎回向きが変わるか（基底の作り直しが起きるか）で分けて測る。
+ * 確保が無いことは -prof gc の gc.alloc.rate.norm で確かめる
+ * （代用品の getLocation が WeakReference を1つ作る分は実サーバーと同じ）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+    /** 行数（ArmorStand 方式では行ごとに linePos が呼ばれる） */
+    @Param({"1", "6"})
+    public int lines;
+
+    /** offsetRight / offsetForward を使うか */
+    @Param({"false", "true"})
+    public boolean offset;
+
+    private LineLayout layout;
+    private Location pos;
+    private Player target;
+
+    @Setup
+    public void setup() {
+        layout = offset ? new LineLayout(0.4, 0.3, 1.90, 0.20) : new LineLayout(0, 0, 1.90, 0.20);
+        pos = new Location(Stubs.world(), 100.5, 64, -20.5, 0f, 10f);
+        target = Stubs.player("target", pos);
+    }
+
+    /** 移動だけ（向きは同じ）：基底は使い回し */
+    @Benchmark
+    public void follow(Blackhole bh) {
+        pos.setX(pos.getX() + 0.01);
+        LineLayout.Frame f = layout.update(target);
+        for (int i = 0; i < lines; i++) bh.consume(layout.linePos(f, i).getY());
+    }
+
+    /** 旋回しながら：毎回基底を作り直す */
+    @Benchmark
+    public void followTurning(Blackhole bh) {
+        pos.setYaw((pos.getYaw() + 7.5f) % 360f);
+        LineLayout.Frame f = layout.update(target);
+        for (int i = 0; i < lines; i++) bh.consume(layout.linePos(f, i).getY());
+    }
+}
@@ -0,0 +1,78 @@
+package net.example.openeffect;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Keyed;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 行の組み立て（RenderPipeline のワーカー側）。
+ * 1ターゲット分の効果をキャッシュ経由で Component にする所と、その部品（効果名・ローマ数字）を測る。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBuildingBenchmark {
+
+    private static final String[] KEYS = {
+            "speed", "haste", "strength", "regeneration", "resistance", "fire_resistance", "night_vision", "absorption"
+    };
+
+    /** 1ターゲットあたりの効果数 */
+    @Param({"1", "4", "8"})
+    public int effects;
+
+    /** 行キャッシュの上限（小さいと毎回作り直しになる） */
+    @Param({"16", "4096"})
+    public int cacheSize;
+
+    private Keyed[] types;
+    private Lang lang;
+    private EffectLineCache lines;
+    private long tick;
+
+    @Setup
+    public void setup() {
+        YamlConfiguration bundle = YamlConfiguration.loadConfiguration(new InputStreamReader(
+                LineBuildingBenchmark.class.getClassLoader().getResourceAsStream("lang/ja.yml"), StandardCharsets.UTF_8));
+        lang = new Lang(bundle);
+        lines = new EffectLineCache(lang, cacheSize);
+        types = new Keyed[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) types[i] = Stubs.effect(KEYS[i]);
+    }
+
+    /** 1ターゲット分。残り秒数は 20 tick ごとに1つ進む（実際の更新間隔と同じ） */
+    @Benchmark
+    public void buildLines(Blackhole bh) {
+        int sec = 600 - (int) (tick++ / 20 % 600);
+        for (int i = 0; i < effects; i++) bh.consume(lines.line(types[i], i & 3, sec + i * 37));
+    }
+
+    @Benchmark
+    public void buildLinesInfinite(Blackhole bh) {
+        for (int i = 0; i < effects; i++) bh.consume(lines.line(types[i], i & 3, EffectLineCache.INFINITE));
+    }
+
+    @Benchmark
+    public String effectName() {
+        return lang.effectName(types[(int) (tick++ & 7)]);
+    }
+
+    @Benchmark
+    public String roman() {
+        return EffectLineCache.roman((int) (tick++ % 12));
+    }
+
+    @Benchmark
+    public Component none() {
+        return lines.none();
+    }
+}
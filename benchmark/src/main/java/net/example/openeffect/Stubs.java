@@ -0,0 +1,160 @@
+package net.example.openeffect;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Keyed;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * ベンチマーク用のサーバー API の代用品（動的プロキシ）。
+ * 必要なメソッドだけ応答し、それ以外は既定値（null / 0 / false）を返す。
+ * PotionEffectType はサーバーのレジストリが無いと初期化できないので、効果は {@link #effect} の Keyed で代用する。
+ */
+final class Stubs {
+
+    /** 登録済みのプレイヤー（Bukkit.getPlayer(UUID) が返す） */
+    static final Map<UUID, Player> PLAYERS = new ConcurrentHashMap<>();
+    /** showEntity / hideEntity の呼び出し回数 */
+    static final LongAdder SHOWN = new LongAdder(), HIDDEN = new LongAdder();
+
+    private static final Logger LOG = Logger.getLogger("OpenEffect-bench");
+    private static boolean installed;
+
+    private Stubs() {}
+
+    /** Bukkit.getServer() を差し替える。setServer はバージョン表示でサーバー実装を探すので、フィールドを直接書く */
+    static synchronized void install() {
+        if (installed) return;
+        Server server = proxy(Server.class, (self, m, args) -> switch (m.getName()) {
+            case "getPlayer" -> args[0] instanceof UUID id ? PLAYERS.get(id) : null;
+            case "getLogger" -> LOG;
+            case "isPrimaryThread" -> true;
+            default -> null;
+        });
+        try {
+            Field f = Bukkit.class.getDeclaredField("server");
+            f.setAccessible(true);
+            f.set(null, server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        installed = true;
+    }
+
+    static Plugin plugin() {
+        return proxy(Plugin.class, (self, m, args) -> switch (m.getName()) {
+            case "getName" -> "OpenEffect";
+            case "getLogger" -> LOG;
+            case "isEnabled" -> true;
+            default -> null;
+        });
+    }
+
+    static World world() {
+        UUID uid = UUID.randomUUID();
+        return proxy(World.class, (self, m, args) -> switch (m.getName()) {
+            case "getUID" -> uid;
+            case "getName" -> "world";
+            default -> null;
+        });
+    }
+
+    /** 表示エンティティの代わり（WeakHashMap のキーになるので同一性で比較される） */
+    static Entity entity() {
+        return proxy(Entity.class, (self, m, args) -> switch (m.getName()) {
+            case "isDead" -> false;
+            case "isValid" -> true;
+            default -> null;
+        });
+    }
+
+    /** show/hide を数えるだけのプレイヤー。{@link #PLAYERS} にも登録する */
+    static Player player(String name) {
+        return player(name, new Location(null, 0, 64, 0));
+    }
+
+    /** pos にいるプレイヤー（pos を書き換えると移動・旋回したことになる） */
+    static Player player(String name, Location pos) {
+        UUID id = UUID.randomUUID();
+        Player p = proxy(Player.class, (self, m, args) -> switch (m.getName()) {
+            case "getUniqueId" -> id;
+            case "getName" -> name;
+            case "isOnline" -> true;
+            case "getEyeHeight" -> 1.62;
+            case "getLocation" -> args == null ? pos.clone() : copy(pos, (Location) args[0]);
+            case "showEntity" -> { SHOWN.increment(); yield null; }
+            case "hideEntity" -> { HIDDEN.increment(); yield null; }
+            default -> null;
+        });
+        PLAYERS.put(id, p);
+        return p;
+    }
+
+    /** サーバーの getLocation(Location) と同じく、渡された Location に書き込んで返す */
+    private static Location copy(Location from, Location to) {
+        if (to == null) return null;
+        to.setWorld(from.getWorld());
+        to.setX(from.getX());
+        to.setY(from.getY());
+        to.setZ(from.getZ());
+        to.setYaw(from.getYaw());
+        to.setPitch(from.getPitch());
+        return to;
+    }
+
+    /** PotionEffectType の代わりに Lang / EffectLineCache へ渡す */
+    static Keyed effect(String key) {
+        NamespacedKey k = NamespacedKey.minecraft(key);
+        return proxy(Keyed.class, (self, m, args) -> switch (m.getName()) {
+            case "getKey", "key" -> k;
+            default -> null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler h) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, (self, m, args) -> {
+            // Object のメソッドは同一性で扱う
+            switch (m.getName()) {
+                case "hashCode": if (m.getParameterCount() == 0) return System.identityHashCode(self); break;
+                case "equals": if (m.getParameterCount() == 1) return self == args[0]; break;
+                case "toString": if (m.getParameterCount() == 0) return type.getSimpleName() + "@stub"; break;
+            }
+            Object r = h.invoke(self, m, args);
+            return r != null ? r : defaultValue(m.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> t) {
+        if (!t.isPrimitive() || t == void.class) return null;
+        if (t == boolean.class) return false;
+        if (t == char.class) return '\0';
+        if (t == long.class) return 0L;
+        if (t == float.class) return 0f;
+        if (t == double.class) return 0d;
+        if (t == int.class) return 0;
+        if (t == short.class) return (short) 0;
+        return (byte) 0;
+    }
+
+    @FunctionalInterface
+    private interface Handler extends InvocationHandler {
+        @Override
+        Object invoke(Object self, Method m, Object[] args);
+    }
+}
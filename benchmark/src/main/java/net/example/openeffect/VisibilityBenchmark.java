@@ -0,0 +1,77 @@
+package net.example.openeffect;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可視性の配り直し（VisibilityIndex）。viewer の ON/OFF はターゲット全員分、
+ * 表示エンティティの割り当ては viewer 全員分の show/hide になる。
+ * 各ターゲットの表示は1体（TextDisplay 方式）として、人数を変えて測る。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisibilityBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int players;
+
+    private VisibilityIndex index;
+    private Player[] online;
+    private Entity[] displays;
+    private Entity spare;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        Stubs.install();
+        Stubs.PLAYERS.clear();
+        Plugin plugin = Stubs.plugin();
+        index = new VisibilityIndex(plugin, new Platform.BukkitPlatform(plugin), new Stats(false));
+        online = new Player[players];
+        displays = new Entity[players];
+        for (int i = 0; i < players; i++) {
+            online[i] = Stubs.player("p" + i);
+            index.setViewer(online[i], true);
+        }
+        for (int i = 0; i < players; i++) {
+            displays[i] = Stubs.entity();
+            index.assign(displays[i], online[i].getUniqueId());
+        }
+        spare = Stubs.entity();
+        index.assign(spare, online[0].getUniqueId());
+    }
+
+    /** applyVisibility 相当：1人が OFF→ON（それぞれ全ターゲット分を送る） */
+    @Benchmark
+    public void toggleViewer() {
+        Player v = online[cursor++ % players];
+        index.setViewer(v, false);
+        index.setViewer(v, true);
+    }
+
+    /** 変化が無い時は何も送らない */
+    @Benchmark
+    public void setViewerUnchanged() {
+        index.setViewer(online[cursor++ % players], true);
+    }
+
+    /** プールからの再利用：別ターゲットへの割り当て直し（前後の持ち主にだけ送る） */
+    @Benchmark
+    public void reassign() {
+        index.assign(spare, online[cursor++ % players].getUniqueId());
+    }
+
+    /** 新規生成：持ち主以外の viewer 全員に見せる */
+    @Benchmark
+    public void assignNew() {
+        index.assign(Stubs.entity(), online[cursor++ % players].getUniqueId());
+    }
+}
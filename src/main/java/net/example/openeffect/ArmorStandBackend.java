@@ -0,0 +1,113 @@
+package net.example.openeffect;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 従来方式：1行につき marker ArmorStand 1体を上端から下へ積む。
+ * 前回の行と比較して変わった行だけ名前を差し替え、行数が変わった時だけ増減する。
+ * 減った行の ArmorStand はプールに戻して次の増加時に使い回す。
+ */
+class ArmorStandBackend implements DisplayBackend {
+
+    private final DisplayManager dm;
+    private final EntityPool<ArmorStand> pool;
+
+    ArmorStandBackend(DisplayManager dm, int poolSize) {
+        this.dm = dm;
+        this.pool = new EntityPool<>(poolSize, dm.stats().removes);
+    }
+
+    @Override
+    public List<Entity> render(Player target, List<Entity> ents, List<Component> prev, List<Component> lines) {
+        // 途中で消えた行があれば位置がずれるので全行を書き直す
+        if (ents.removeIf(e -> e == null || !e.isValid())) prev = Collections.emptyList();
+
+        // 行数が減った分はプールへ
+        while (ents.size() > lines.size()) park((ArmorStand) ents.remove(ents.size() - 1));
+
+        // 残った行は変わった所だけ名前を差し替え
+        for (int i = 0; i < ents.size(); i++) {
+            Component line = lines.get(i);
+            if (i < prev.size() && line.equals(prev.get(i))) continue;
+            ents.get(i).customName(line);
+            dm.stats().renames.inc();
+        }
+
+        // 足りない行はプールから（無ければ新規）
+        if (ents.size() == lines.size()) return Collections.emptyList();
+        List<Entity> added = new ArrayList<>(lines.size() - ents.size());
+        for (int i = ents.size(); i < lines.size(); i++) {
+            Location pos = dm.linePos(target, i);
+            ArmorStand as = pool.acquire(target.getWorld());
+            if (as != null) {
+                dm.teleport(as, pos, null);
+                as.setCustomNameVisible(true);
+            } else {
+                as = spawnLine(pos);
+            }
+            as.customName(lines.get(i));
+            dm.stats().renames.inc();
+            ents.add(as);
+            added.add(as);
+        }
+        return added;
+    }
+
+    @Override
+    public void follow(Player target, List<Entity> ents) {
+        for (int i = 0; i < ents.size(); i++) {
+            Entity as = ents.get(i);
+            if (as == null || as.isDead()) continue;
+            dm.teleport(as, dm.linePos(target, i), null);
+        }
+    }
+
+    @Override
+    public void release(List<Entity> ents) {
+        for (Entity e : ents) if (e instanceof ArmorStand) park((ArmorStand) e);
+        ents.clear();
+    }
+
+    @Override
+    public void clear() {
+        pool.clear();
+    }
+
+    @Override
+    public boolean adopt(Entity e) {
+        if (!(e instanceof ArmorStand)) return false;
+        e.setVisibleByDefault(false);
+        park((ArmorStand) e);
+        return true;
+    }
+
+    /** 名前を消してプールへ（marker＋透明なので名前が無ければ何も描画されない） */
+    private void park(ArmorStand as) {
+        if (as == null || as.isDead()) return;
+        as.setCustomNameVisible(false);
+        as.customName(null);
+        pool.release(as);
+    }
+
+    private ArmorStand spawnLine(Location pos) {
+        dm.stats().spawns.inc();
+        return pos.getWorld().spawn(pos, ArmorStand.class, ent -> {
+            ent.setMarker(true);
+            ent.setInvisible(true);
+            ent.setSilent(true);
+            ent.setGravity(false);
+            ent.setCustomNameVisible(true);
+            ent.customName(Component.text(""));
+            ent.setVisibleByDefault(false); // viewer単位
+            dm.tag(ent);
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package net.example.openeffect;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * ターゲット1人分の表示エンティティの描画方式。
+ * ents は DisplayManager が保持するターゲットごとのリストで、backend が中身を増減させる。
+ */
+interface DisplayBackend {
+
+    /**
+     * 行内容を反映する。prev は前回描画した行で、差分だけをエンティティに反映する。
+     * @return 新たに生成・プールから取得したエンティティ（呼び出し側で可視性を適用する）
+     */
+    List<Entity> render(Player target, List<Entity> ents, List<Component> prev, List<Component> lines);
+
+    /** 内容は変えずに位置だけ追従させる */
+    void follow(Player target, List<Entity> ents);
+
+    /** ターゲットの表示をやめる。エンティティは削除せずプールに戻してよい。ents は空になる */
+    void release(List<Entity> ents);
+
+    /** プールを含め、backend が抱えているエンティティをすべて削除する */
+    void clear();
+
+    /**
+     * 持ち主のいない表示エンティティ（前回の実行の残り）を引き取る。
+     * @return この方式のエンティティならプールに入れて（あふれた分は削除して）true、別方式なら false
+     */
+    boolean adopt(Entity e);
+
+    /** エンティティがターゲットに騎乗して自動追従する（移動イベントでの follow が不要） */
+    default boolean followsTarget() {
+        return false;
+    }
+
+    /** ターゲットごとの表示エンティティを使うか（hud は使わない） */
+    default boolean usesEntities() {
+        return true;
+    }
+
+    /** config の display.type（armorstand / textdisplay / hud）から生成（未設定なら従来の armorstand） */
+    static DisplayBackend create(DisplayManager dm, ConfigurationSection cfg) {
+        String type = cfg == null ? "armorstand" : cfg.getString("type", "armorstand");
+        if ("hud".equalsIgnoreCase(type)) return new HudBackend(dm, cfg.getConfigurationSection("hud"));
+        // Folia ではプールのエンティティが別リージョンにいると使えないのでプールしない
+        int poolSize = dm.platform().regionized() ? 0 : (cfg == null ? 64 : cfg.getInt("poolSize", 64));
+        if ("textdisplay".equalsIgnoreCase(type)) return new TextDisplayBackend(dm, cfg, poolSize);
+        if ("passenger".equalsIgnoreCase(cfg == null ? null : cfg.getString("attach")))
+            dm.logger().warning("display.attach: passenger は textdisplay 専用です。teleport で動作します");
+        return new ArmorStandBackend(dm, poolSize);
+    }
+}
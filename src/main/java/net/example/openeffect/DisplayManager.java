@@ -3,42 +3,89 @@ package net.example.openeffect;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
-import org.bukkit.World;
-import org.bukkit.entity.ArmorStand;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
-import org.bukkit.potion.PotionEffect;
-import org.bukkit.util.Vector;
+import org.bukkit.persistence.PersistentDataType;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
 /**
- * ターゲットごとに行単位の ArmorStand を「上端から下方向へ」積む。
+ * ターゲットごとの表示エンティティを「上端から下方向へ」積む。
+ * 実際のエンティティ種別は {@link DisplayBackend}（ArmorStand / TextDisplay）に任せる。
  * 可視性は viewer 単位＆「自分自身の行は常に非表示」。
+ * Bukkit では全体で1本の tick（予算付きキュー）、Folia では各ターゲットが自分のリージョンで
+ * {@link #tickTarget} を回す。ターゲットごとのリストはそのターゲットのスレッドからしか触らない。
+ * 行の組み立てと差分判定は {@link RenderPipeline} のワーカーで行い、ここでは Bukkit の呼び出しだけを行う。
  */
 public class DisplayManager {
 
     private final OpenEffectPlugin core;
 
-    // targetUUID -> 行ごとのArmorStand
-    private final Map<UUID, List<ArmorStand>> displays = new HashMap<>();
-    // 直近の描画内容（変化検知）
-    private final Map<UUID, List<String>> lastLines = new HashMap<>();
+    // targetUUID -> 表示エンティティ（ArmorStand なら行ごと、TextDisplay なら1体）
+    private final Map<UUID, List<Entity>> displays = new ConcurrentHashMap<>();
+    // 直近の描画内容（変化検知）。ワーカーが比較に使うので、入れた後のリストは書き換えない
+    private final Map<UUID, List<Component>> lastLines = new ConcurrentHashMap<>();
+    // 内容の作り直し・移動の追従・定期確認のキュー（tick あたりの予算付き。Bukkit のみ）
+    private final UpdateScheduler scheduler;
+    // Folia：次の tick で位置を合わせるターゲット
+    private final Set<UUID> pendingMove = ConcurrentHashMap.newKeySet();
+    // 近くに見る人がいないので表示を畳んでいるターゲット
+    private final Set<UUID> culled = ConcurrentHashMap.newKeySet();
+    private final ViewerGrid grid = new ViewerGrid();
+    // 最後に位置を合わせた時のターゲット位置 {x, y, z, yaw}
+    private final Map<UUID, double[]> lastPos = new ConcurrentHashMap<>();
+    private long tickCount;
+    private final Platform platform;
+    // 表示エンティティの目印（クラッシュ等で残ったものを次の起動・チャンク読み込みで見分ける）
+    private final NamespacedKey displayKey;
+    private final Stats stats;
+    private final EffectStateCache effects;
+    private final VisibilityIndex visibility;
+    private final QosController qos;
 
     // config
-    private final double offRight, offForward;
-    private final double topUp, stepDown;
-    private final boolean showPlayerName;
-    private final String language;
+    private final LineLayout layout;
+    private final RenderPipeline pipeline;
+    private final DisplayBackend backend;
+    private final HudBackend hud; // display.type: hud の時だけ
+    private final int period;
+    private final boolean updateOnMove;
+    private final double moveMinDistSq, moveMinYaw;
+    private final int cullChunks; // 0 なら無効
+    private final long refreshEvery; // Folia：定期確認の間隔（updateTicks × shards）
 
     public DisplayManager(OpenEffectPlugin plugin) {
         this.core = plugin;
+        this.platform = plugin.platform();
+        this.displayKey = new NamespacedKey(plugin, "display");
+        this.stats = plugin.stats();
+        this.effects = plugin.effects();
+        this.visibility = new VisibilityIndex(plugin, platform, stats);
+        this.qos = plugin.qos();
         var cfg = plugin.getConfig();
-        this.offRight    = cfg.getDouble("offsetRight",   0.0);
-        this.offForward  = cfg.getDouble("offsetForward", 0.0);
-        this.topUp       = cfg.getDouble("box.topUp",     1.90);
-        this.stepDown    = cfg.getDouble("box.step",      0.20);
-        this.showPlayerName = cfg.getBoolean("showPlayerName", false);
-        this.language    = cfg.getString("language", "ja");
+        this.layout      = new LineLayout(
+                cfg.getDouble("offsetRight",   0.0),
+                cfg.getDouble("offsetForward", 0.0),
+                cfg.getDouble("box.topUp",     1.90),
+                cfg.getDouble("box.step",      0.20));
+        this.pipeline    = new RenderPipeline(
+                new EffectLineCache(Lang.load(plugin, cfg.getString("language", "ja")), cfg.getInt("lineCacheSize", 4096)),
+                cfg.getBoolean("showPlayerName", false),
+                cfg.getInt("render.threads", 1));
+        this.backend     = DisplayBackend.create(this, cfg.getConfigurationSection("display"));
+        this.hud         = backend instanceof HudBackend ? (HudBackend) backend : null;
+        this.period      = Math.max(1, cfg.getInt("updateTicks", 1));
+        this.updateOnMove = cfg.getBoolean("updateOnMove", true);
+        double minDist   = cfg.getDouble("move.minDistance", 0.01);
+        this.moveMinDistSq = minDist * minDist;
+        this.moveMinYaw  = cfg.getDouble("move.minYaw", 2.0);
+        int shards       = Math.max(1, cfg.getInt("scheduler.shards", 4));
+        this.scheduler   = new UpdateScheduler(cfg.getLong("scheduler.budgetMicros", 2000), shards);
+        this.refreshEvery = (long) period * shards;
+        this.cullChunks  = (int) Math.ceil(Math.max(0, cfg.getDouble("culling.radius", 48)) / 16.0);
     }
 
     public void ensureAllTargets() {
@@ -46,195 +93,356 @@ public class DisplayManager {
     }
 
     public void ensureTarget(Player target) {
-        displays.computeIfAbsent(target.getUniqueId(), k -> new ArrayList<>());
-        lastLines.computeIfAbsent(target.getUniqueId(), k -> new ArrayList<>());
-        if (displays.get(target.getUniqueId()).isEmpty()) {
-            ArmorStand as = spawnLine(target, 0);
-            displays.get(target.getUniqueId()).add(as);
+        if (updateCulling(target) || !backend.usesEntities()) return;
+        UUID id = target.getUniqueId();
+        List<Entity> list = displays.computeIfAbsent(id, k -> new ArrayList<>());
+        if (list.isEmpty()) {
+            layout.update(target);
+            List<Component> blank = Collections.singletonList(Component.empty());
             // 可視性適用（自分には非表示）
-            reapplyVisibilityForTarget(target.getUniqueId(), as);
+            for (Entity e : backend.render(target, list, Collections.emptyList(), blank))
+                visibility.assign(e, id);
+            lastLines.put(id, blank); // 次の update は空行からの差分で描画
+            effects.markChanged(id);
         }
     }
 
     public void removeTarget(UUID targetId) {
         removeAllLines(targetId);
+        pipeline.discard(targetId);
         displays.remove(targetId);
         lastLines.remove(targetId);
+        scheduler.remove(targetId);
+        pendingMove.remove(targetId);
+        lastPos.remove(targetId);
+        layout.remove(targetId);
+        culled.remove(targetId);
+        if (hud != null) hud.untrack(targetId);
+    }
+
+    /** onDisable から。ワーカーを止める */
+    public void shutdown() {
+        pipeline.close();
+        despawnAll();
     }
 
     public void despawnAll() {
-        for (UUID id : new ArrayList<>(displays.keySet())) removeAllLines(id);
+        for (List<Entity> list : displays.values()) {
+            stats.removes.add(list.size());
+            removeEntities(list);
+        }
+        backend.clear();
+        pipeline.clear();
         displays.clear();
         lastLines.clear();
+        lastPos.clear();
+        layout.clear();
+        scheduler.clear();
+        pendingMove.clear();
+        culled.clear();
     }
 
-    private void removeAllLines(UUID id) {
-        List<ArmorStand> list = displays.get(id);
-        if (list != null) {
-            for (ArmorStand as : list) if (as != null && !as.isDead()) as.remove();
-            list.clear();
+    /**
+     * 近くに見る人（表示 ON の viewer。本人は除く）がいなければ表示を畳んでプールに戻す。
+     * 畳む時は culling.radius＋1チャンク、戻す時は culling.radius で判定して境界でのばたつきを抑える。
+     * QoS が PAUSE_DISTANT の間は qos.pauseRadius まで狭める。
+     * @return 畳んだ状態なら true
+     */
+    private boolean updateCulling(Player target) {
+        UUID id = target.getUniqueId();
+        boolean was = culled.contains(id);
+        int radius = cullRadius();
+        if (radius <= 0) {
+            // 無効（QoS で一時的に畳んでいたものは戻す）
+            if (was && culled.remove(id)) effects.markChanged(id);
+            return false;
         }
+        boolean near = grid.anyNear(target.getLocation(), was ? radius : radius + 1, id);
+        if (near == !was) return was;
+        if (near) {
+            culled.remove(id);
+            effects.markChanged(id); // 畳んでいる間の変化をまとめて描画
+            return false;
+        }
+        culled.add(id);
+        removeAllLines(id);
+        lastLines.put(id, new ArrayList<>());
+        return true;
     }
 
-    public void updateAll() {
-        for (Player target : Bukkit.getOnlinePlayers()) updateOne(target);
-        displays.keySet().removeIf(id -> Bukkit.getPlayer(id) == null);
-        lastLines.keySet().removeIf(id -> Bukkit.getPlayer(id) == null);
+    /** 今の畳み込み距離（チャンク、0 なら無効） */
+    private int cullRadius() {
+        int pause = qos.pauseChunks();
+        if (pause <= 0) return cullChunks;
+        return cullChunks > 0 ? Math.min(cullChunks, pause) : pause;
     }
 
-    public void updateOne(Player target) {
-        if (target == null || !target.isOnline()) return;
+    /** viewer の位置を索引に反映（チャンクが変わった時だけ実際に動く）。hud では相手探しのために全員の位置も持つ */
+    private void trackViewer(Player p, Location at) {
+        if (hud != null) hud.track(p.getUniqueId(), at);
+        if ((cullChunks > 0 || qos.mayPause()) && visibility.isViewer(p.getUniqueId())) grid.update(p.getUniqueId(), at);
+    }
 
-        List<String> lines = buildEffectLines(target);
-        UUID id = target.getUniqueId();
+    /**
+     * QoS の段階が変わった時（QosController から）。残り時間の表示有無が変わったら全員を描画し直させる。
+     * 定期確認の間隔・移動追従・畳み込み距離は次の確認から自然に反映される。
+     */
+    void onQosChange(int prevLevel) {
+        if ((prevLevel < QosController.NO_TIMERS) == qos.timers()) return;
+        for (Player p : Bukkit.getOnlinePlayers()) effects.markChanged(p.getUniqueId());
+    }
 
-        if (!lines.equals(lastLines.getOrDefault(id, Collections.emptyList()))) {
-            removeAllLines(id);
-            List<ArmorStand> list = displays.computeIfAbsent(id, k -> new ArrayList<>());
-            for (int i = 0; i < lines.size(); i++) {
-                ArmorStand as = spawnLine(target, i);
-                as.customName(Component.text(lines.get(i)));
-                list.add(as);
-                reapplyVisibilityForTarget(id, as); // 新規行の可視性
-            }
-            lastLines.put(id, new ArrayList<>(lines));
-        } else {
-            List<ArmorStand> list = displays.get(id);
-            if (list != null) {
-                for (int i = 0; i < list.size(); i++) {
-                    ArmorStand as = list.get(i);
-                    if (as == null || as.isDead()) continue;
-                    as.teleport(linePos(target, i));
-                }
-            }
-        }
+    private void removeAllLines(UUID id) {
+        List<Entity> list = displays.get(id);
+        if (list != null) backend.release(list);
+    }
+
+    static void removeEntities(List<Entity> list) {
+        for (Entity e : list) if (e != null && !e.isDead()) e.remove();
+        list.clear();
+    }
+
+    Logger logger() { return core.getLogger(); }
+    Platform platform() { return platform; }
+    Stats stats() { return stats; }
+
+    /** 生成時に呼ぶ。保存対象から外し、目印を付ける */
+    void tag(Entity e) {
+        e.setPersistent(false);
+        e.getPersistentDataContainer().set(displayKey, PersistentDataType.BYTE, (byte) 1);
     }
 
     /**
-     * viewer の可視性を一括反映。
-     * show=true でも「viewer自身のターゲット行」は常に非表示にする。
+     * 目印付きで持ち主のいないエンティティ（前回の実行の残り）を引き取る。
+     * 今の表示方式のものはプールに入れて使い回し、それ以外は削除する。起動時とチャンクのエンティティ読み込み時に呼ぶ。
+     * @return 引き取った数
      */
-    public void applyVisibility(Player viewer, boolean show) {
-        UUID vid = viewer.getUniqueId();
-        for (Map.Entry<UUID, List<ArmorStand>> e : displays.entrySet()) {
-            UUID targetId = e.getKey();
-            boolean showThis = show && !vid.equals(targetId) && core.canUse(viewer);
-            for (ArmorStand as : e.getValue()) {
-                if (as == null || as.isDead()) continue;
-                if (showThis) viewer.showEntity(core, as);
-                else viewer.hideEntity(core, as);
+    public int reclaim(Iterable<? extends Entity> entities) {
+        int n = 0;
+        for (Entity e : entities) {
+            if (e.isDead() || !e.getPersistentDataContainer().has(displayKey, PersistentDataType.BYTE)) continue;
+            if (visibility.isTracked(e)) continue;
+            e.setPersistent(false);
+            if (!backend.adopt(e)) {
+                e.remove();
+                stats.removes.inc();
             }
+            n++;
         }
+        if (n > 0) stats.reclaimed.add(n);
+        return n;
+    }
+
+    /** 表示エンティティの位置合わせはすべてここを通す（回数を数える） */
+    void teleport(Entity e, Location to, Runnable then) {
+        stats.teleports.inc();
+        platform.teleport(e, to, then);
+    }
+    double topUp() { return layout.topUp(); }
+    double stepDown() { return layout.stepDown(); }
+    boolean hasHorizontalOffset() { return layout.hasHorizontalOffset(); }
+
+    /** 直近に描画した行（hud が viewer 側に出す。差し替え時は別のリストになる） */
+    List<Component> lines(UUID targetId) {
+        return lastLines.get(targetId);
+    }
+
+    /** 直近に描画した行数 */
+    int lineCount(UUID targetId) {
+        List<Component> l = lastLines.get(targetId);
+        return l == null ? 0 : l.size();
     }
 
-    /** 特定ターゲットの行を、全 viewer に対して再適用（自分には非表示） */
-    private void reapplyVisibilityForTarget(UUID targetId, ArmorStand as) {
-        for (Player v : Bukkit.getOnlinePlayers()) {
-            boolean show = core.canUse(v) && !v.getUniqueId().equals(targetId);
-            if (show) v.showEntity(core, as);
-            else v.hideEntity(core, as);
+    /**
+     * 毎 tick 呼ぶ。起床した（効果が変わった／残り秒数の表示が変わる）ターゲットと移動したターゲットを積み、
+     * updateTicks ごと（QoS で間引いている間はその数倍ごと）に1シャード分の定期確認も積んで、
+     * scheduler の予算内で処理する。1ターゲットの位置合わせは1 tick に1回まで。
+     */
+    public void tick() {
+        long t0 = stats.tick.start();
+        pipeline.drain(r -> {
+            Player target = Bukkit.getPlayer(r.id());
+            if (target != null) apply(target, r);
+        });
+        effects.pollDue(effects.now(), scheduler::markContent);
+        if (++tickCount % ((long) period * qos.refreshScale()) == 0) {
+            List<UUID> online = new ArrayList<>();
+            for (Player p : Bukkit.getOnlinePlayers()) online.add(p.getUniqueId());
+            scheduler.enqueueShard(online);
+            pruneOffline();
+        }
+        scheduler.run(this::updateContent, this::updatePosition, this::refresh);
+        if (hud != null && tickCount % hud.period() == 0) {
+            long now = effects.now();
+            for (Player v : Bukkit.getOnlinePlayers()) if (visibility.isViewer(v.getUniqueId())) hud.updateViewer(v, now);
         }
+        stats.tick.stop(t0);
     }
 
-    // ==== 位置計算：上端から下に積む ====
-    private Location linePos(Player target, int index) {
-        Location top = topPos(target);
-        return top.add(0, -stepDown * index, 0);
-    }
-
-    private ArmorStand spawnLine(Player target, int index) {
-        Location pos = linePos(target, index);
-        World w = target.getWorld();
-        return w.spawn(pos, ArmorStand.class, ent -> {
-            ent.setMarker(true);
-            ent.setInvisible(true);
-            ent.setSilent(true);
-            ent.setGravity(false);
-            ent.setCustomNameVisible(true);
-            ent.customName(Component.text(""));
-            ent.setVisibleByDefault(false); // viewer単位
+    private void updateContent(UUID id) {
+        Player target = Bukkit.getPlayer(id);
+        if (target != null) updateOne(target);
+    }
+
+    /** 移動の追従。同じ tick の {@link #apply} で合わせ済みなら動かさない（騎乗表示は乗せ直しの確認なので常に） */
+    private void updatePosition(UUID id) {
+        Player target = Bukkit.getPlayer(id);
+        if (target == null) return;
+        Location at = target.getLocation();
+        trackViewer(target, at);
+        if (backend.followsTarget() || hasMoved(id, at)) follow(target);
+    }
+
+    /**
+     * 定期確認：表示エンティティが無ければ作り直し、移動イベントで拾えない動きを追従する
+     * （乗り物の上のターゲット。updateOnMove: false か QoS で移動追従を止めている間は全員）。
+     * viewer の位置索引もここで合わせる（乗り物の上では PlayerMoveEvent が来ない）。
+     * 騎乗表示は降ろされた時以外は何もしない。
+     */
+    private void refresh(UUID id) {
+        Player target = Bukkit.getPlayer(id);
+        if (target == null) return;
+        Location at = target.getLocation();
+        trackViewer(target, at);
+        ensureTarget(target);
+        if (backend.followsTarget()) return;
+        if (!updateOnMove || ((!qos.moveUpdates() || target.isInsideVehicle()) && hasMoved(id, at)))
+            follow(target);
+    }
+
+    private void pruneOffline() {
+        displays.entrySet().removeIf(e -> {
+            if (Bukkit.getPlayer(e.getKey()) != null) return false;
+            backend.release(e.getValue());
+            return true;
         });
+        lastLines.keySet().removeIf(id -> Bukkit.getPlayer(id) == null);
+        lastPos.keySet().removeIf(id -> Bukkit.getPlayer(id) == null);
+        layout.prune(id -> Bukkit.getPlayer(id) == null);
+        culled.removeIf(id -> Bukkit.getPlayer(id) == null);
+    }
+
+    /**
+     * Folia：ターゲット自身のリージョンで毎 tick 呼ぶ。全体の予算付きキューの代わりに自分の分だけ処理する
+     * （内容の作り直しと移動の追従、定期確認は updateTicks × shards ごと）。
+     */
+    public void tickTarget(Player target) {
+        long t0 = stats.tick.start();
+        UUID id = target.getUniqueId();
+        long now = effects.now(target);
+        RenderPipeline.Result r = pipeline.take(id);
+        if (r != null) apply(target, r);
+        if (Math.floorMod(now + id.hashCode(), refreshEvery * qos.refreshScale()) == 0) refresh(id);
+        if (effects.takeDue(id, now)) updateOne(target);
+        if (pendingMove.remove(id)) updatePosition(id);
+        if (hud != null && now % hud.period() == 0 && visibility.isViewer(id)) hud.updateViewer(target, now);
+        stats.tick.stop(t0);
     }
 
-    private Location topPos(Player target) {
-        Location eye = target.getEyeLocation();
-        Vector right = rightOf(eye);
-        Vector fwd   = forwardFlat(eye);
-        return eye.clone()
-                .add(right.multiply(offRight))
-                .add(fwd.multiply(offForward))
-                .add(0, topUp, 0);
+    /** テレポート・ワールド移動など、次の tick で位置を確認させる */
+    public void markMoved(UUID targetId) {
+        if (platform.regionized()) pendingMove.add(targetId);
+        else scheduler.markPosition(targetId);
     }
 
-    private Vector forwardFlat(Location eye) {
-        Vector fwd = eye.getDirection().clone(); fwd.setY(0);
-        if (fwd.lengthSquared() < 1e-6) fwd = new Vector(0,0,1);
-        return fwd.normalize();
+    private boolean isMoveQueued(UUID id) {
+        return platform.regionized() ? pendingMove.contains(id) : scheduler.isPositionQueued(id);
     }
-    private Vector rightOf(Location eye) {
-        Vector fwd = forwardFlat(eye);
-        return new Vector(-fwd.getZ(), 0, fwd.getX()).normalize();
+
+    /**
+     * PlayerMoveEvent から。最後に位置を合わせた時から閾値以上動いた時だけ印を付ける
+     * （実際の追従は次の tick にまとめて1回）。QoS で移動追従を止めている間は定期確認に任せる。
+     */
+    public void onMove(Player target, Location to) {
+        long t0 = stats.onMove.start();
+        trackViewer(target, to);
+        UUID id = target.getUniqueId();
+        if (updateOnMove && qos.moveUpdates() && !backend.followsTarget() && !culled.contains(id)
+                && !isMoveQueued(id) && hasMoved(id, to))
+            markMoved(id);
+        stats.onMove.stop(t0);
     }
 
-    // ==== 表示テキスト ====
-    private List<String> buildEffectLines(Player target) {
-        List<String> out = new ArrayList<>();
-        if (showPlayerName) out.add(target.getName());
+    private boolean hasMoved(UUID id, Location to) {
+        double[] last = lastPos.get(id);
+        if (last == null) return true;
+        double dx = to.getX() - last[0], dy = to.getY() - last[1], dz = to.getZ() - last[2];
+        if (dx * dx + dy * dy + dz * dz >= moveMinDistSq) return true;
+        if (!hasHorizontalOffset()) return false; // 向きで位置が変わらない
+        double dyaw = Math.abs(to.getYaw() - last[3]) % 360.0;
+        return Math.min(dyaw, 360.0 - dyaw) >= moveMinYaw;
+    }
 
-        Collection<PotionEffect> effects = target.getActivePotionEffects();
-        if (effects.isEmpty()) {
-            out.add("（効果なし）");
-            return out;
-        }
-        for (PotionEffect eff : effects) {
-            String type = effectName(eff);
-            int lv = eff.getAmplifier() + 1;
-            int sec = Math.max(0, eff.getDuration() / 20);
-            String m = String.format("%d:%02d", sec / 60, sec % 60);
-            out.add(type + " " + roman(lv) + " " + m);
-        }
-        return out;
-        // ※ 行が多すぎてネームタグと被る場合は config の box.topUp / box.step を調整
-    }
-
-    private String effectName(PotionEffect eff) {
-        String key = eff.getType().getName();
-        switch (key) {
-            case "SPEED": return "移動速度";
-            case "SLOW": return "移動低下";
-            case "FAST_DIGGING": return "採掘速度";
-            case "SLOW_DIGGING": return "採掘低下";
-            case "INCREASE_DAMAGE": return "攻撃力上昇";
-            case "HEAL": return "即時回復";
-            case "HARM": return "即時ダメージ";
-            case "JUMP": return "跳躍力上昇";
-            case "REGENERATION": return "再生";
-            case "DAMAGE_RESISTANCE": return "耐性";
-            case "FIRE_RESISTANCE": return "耐火";
-            case "WATER_BREATHING": return "水中呼吸";
-            case "INVISIBILITY": return "透明化";
-            case "NIGHT_VISION": return "暗視";
-            case "HUNGER": return "空腹";
-            case "WEAKNESS": return "弱体化";
-            case "POISON": return "毒";
-            case "WITHER": return "衰弱";
-            case "HEALTH_BOOST": return "体力増強";
-            case "ABSORPTION": return "衝撃吸収";
-            case "SATURATION": return "満腹度回復";
-            case "GLOWING": return "発光";
-            case "LEVITATION": return "浮遊";
-            case "LUCK": return "幸運";
-            case "UNLUCK": return "不運";
-            case "CONDUIT_POWER": return "コンジットパワー";
-            case "DOLPHINS_GRACE": return "イルカの好意";
-            case "BAD_OMEN": return "不吉な予感";
-            case "HERO_OF_THE_VILLAGE": return "村の英雄";
-            default: return key;
+    public void follow(Player target) {
+        List<Entity> list = displays.get(target.getUniqueId());
+        if (list == null || list.isEmpty()) return;
+        Location at = layout.update(target).at();
+        backend.follow(target, list);
+        double[] last = lastPos.computeIfAbsent(target.getUniqueId(), k -> new double[4]);
+        last[0] = at.getX(); last[1] = at.getY(); last[2] = at.getZ(); last[3] = at.getYaw();
+    }
+
+    /**
+     * 内容の作り直し（1段目）。効果のスナップショットをワーカーに渡す。
+     * 結果は次の tick の {@link #apply} で反映される（位置は移動キューと定期確認に任せる）。
+     */
+    public void updateOne(Player target) {
+        if (target == null || !target.isOnline()) return;
+
+        UUID id = target.getUniqueId();
+        if (culled.contains(id)) return; // 戻した時に markContent される
+        long t0 = stats.updateOne.start();
+        long now = effects.now(target);
+        pipeline.submit(target, effects.effects(id), now, lastLines.getOrDefault(id, Collections.emptyList()), qos.timers());
+        effects.scheduleNext(id, now, qos.wakeStep());
+        stats.updateOne.stop(t0);
+    }
+
+    /**
+     * 3段目：ワーカーの結果を反映。変わった行だけ差し替え、増えた分のエンティティにだけ可視性を適用する。
+     * 位置を合わせ直すのは行数が変わった時（TextDisplay の基準位置が変わる）と、前回から動いていた時だけ
+     * （残り時間の減少は名前の差し替え1回で済ませる）。
+     */
+    private void apply(Player target, RenderPipeline.Result r) {
+        UUID id = target.getUniqueId();
+        if (culled.contains(id)) return;
+        List<Component> prev = lastLines.getOrDefault(id, Collections.emptyList());
+        // 比較元がその後変わっていたら（作り直し・畳み込み）ここで比べ直す
+        boolean changed = prev == r.base() ? r.changed() : !r.lines().equals(prev);
+        if (!changed) return;
+        long t0 = stats.apply.start();
+        layout.update(target); // 増えた行の出現位置
+        List<Entity> list = displays.computeIfAbsent(id, k -> new ArrayList<>());
+        for (Entity e : backend.render(target, list, prev, r.lines()))
+            visibility.assign(e, id);
+        lastLines.put(id, r.lines());
+        if (prev.size() != r.lines().size() || hasMoved(id, target.getLocation())) follow(target);
+        stats.apply.stop(t0);
+    }
+
+    /**
+     * viewer の可視性を反映（参加・ON/OFF・権限変更時）。
+     * 前回から変わった時だけ送信し、show=true でも「viewer自身のターゲット行」は常に非表示。
+     */
+    public void applyVisibility(Player viewer, boolean show) {
+        visibility.setViewer(viewer, show);
+        if (show) trackViewer(viewer, viewer.getLocation());
+        else {
+            grid.remove(viewer.getUniqueId());
+            if (hud != null) hud.removeViewer(viewer.getUniqueId());
         }
     }
 
-    private String roman(int n) {
-        String[] r = {"","I","II","III","IV","V","VI","VII","VIII","IX","X"};
-        return n >= 0 && n < r.length ? r[n] : String.valueOf(n);
+    /** viewer の退出 */
+    public void removeViewer(UUID viewerId) {
+        visibility.removeViewer(viewerId);
+        grid.remove(viewerId);
+        if (hud != null) hud.removeViewer(viewerId);
+    }
+
+    // ==== 位置計算：上端から下に積む ====
+    /** 直近の位置合わせ時点での index 行目の位置（返り値は使い回し。すぐ teleport に渡すこと） */
+    Location linePos(Player target, int index) {
+        return layout.linePos(layout.frame(target), index);
     }
 }
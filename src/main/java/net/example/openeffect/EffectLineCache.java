@@ -0,0 +1,81 @@
+package net.example.openeffect;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Keyed;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 効果1行分の Component を (効果, 増幅, 残り秒数) ごとにキャッシュする。
+ * 同じ組み合わせは多くのプレイヤーで同時に出るので、描画は基本的に参照だけで済む。
+ * 件数は cacheSize で頭打ちにし、古いものから捨てる（Folia では複数リージョンから呼ばれるので排他）。
+ */
+final class EffectLineCache {
+
+    static final int INFINITE = -1;
+    /** 残り時間を出さない（QoS で間引いている間） */
+    static final int HIDDEN = -2;
+
+    private final Lang lang;
+    private final LineTemplate template;
+    private final LineTemplate noTime;
+    private final String infinite;
+    private final Component none;
+    private final Map<Keyed, Integer> typeIds = new IdentityHashMap<>();
+    private final Map<Long, Component> cache;
+
+    EffectLineCache(Lang lang, int capacity) {
+        this.lang = lang;
+        this.template = LineTemplate.compile(lang.get("line", "{name} {level} {time}"));
+        this.noTime = LineTemplate.compile(lang.get("lineNoTime", "{name} {level}"));
+        this.infinite = lang.get("infinite", "∞");
+        this.none = Component.text(lang.get("none", "（効果なし）"));
+        int cap = Math.max(16, capacity);
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Component> eldest) {
+                return size() > cap;
+            }
+        };
+    }
+
+    Component none() {
+        return none;
+    }
+
+    /** seconds は残り秒数、無限効果は {@link #INFINITE}、時間を出さないなら {@link #HIDDEN} */
+    synchronized Component line(Keyed type, int amplifier, int seconds) {
+        long key = ((long) typeId(type) << 40) | ((long) (amplifier & 0xffff) << 24) | (seconds & 0xffffffL);
+        Component c = cache.get(key);
+        if (c == null) {
+            LineTemplate t = seconds == HIDDEN ? noTime : template;
+            c = Component.text(t.format(lang.effectName(type), roman(amplifier + 1), time(seconds)));
+            cache.put(key, c);
+        }
+        return c;
+    }
+
+    private int typeId(Keyed type) {
+        Integer id = typeIds.get(type);
+        if (id == null) {
+            id = typeIds.size();
+            typeIds.put(type, id);
+        }
+        return id;
+    }
+
+    private String time(int sec) {
+        if (sec == INFINITE) return infinite;
+        if (sec == HIDDEN) return "";
+        int s = sec % 60;
+        return (sec / 60) + (s < 10 ? ":0" : ":") + s;
+    }
+
+    private static final String[] ROMAN = {"", "I", "II", "III", "IV", "V", "VI", "VII", "VIII", "IX", "X"};
+
+    static String roman(int n) {
+        return n >= 0 && n < ROMAN.length ? ROMAN[n] : String.valueOf(n);
+    }
+}
@@ -0,0 +1,193 @@
+package net.example.openeffect;
+
+import com.destroystokyo.paper.event.player.PlayerPostRespawnEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPotionEffectEvent;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * プレイヤーごとのポーション効果を EntityPotionEffectEvent から保持する。
+ * 効果は「終了 tick（絶対値）」で持つので、毎 tick getActivePotionEffects() を呼ぶ必要がない。
+ * 表示を作り直す必要があるのは「効果が変わった時」と「残り秒数の表示が変わる時（1秒境界／終了）」だけで、
+ * その tick を起床キューに積んでおく。
+ * Folia ではプレイヤーごとの状態はそのプレイヤーのリージョンからしか触らないので、
+ * 外側の表だけ並行対応にし、起床は各ターゲットが {@link #takeDue} で自分の分だけ確認する。
+ * tick は {@link Platform#currentTick} で、Folia ではターゲットごとの時計になる（終了 tick もその時計で持つ）。
+ */
+final class EffectStateCache implements Listener {
+
+    /** 1効果分。expiry は終了 tick、無限効果は {@link #INFINITE} */
+    static final class Entry {
+        final PotionEffectType type;
+        final int amplifier;
+        final long expiry;
+
+        Entry(PotionEffectType type, int amplifier, long expiry) {
+            this.type = type;
+            this.amplifier = amplifier;
+            this.expiry = expiry;
+        }
+
+        boolean infinite() { return expiry == INFINITE; }
+
+        /** 表示上の残り秒数 */
+        int seconds(long now) { return (int) Math.max(0, (expiry - now) / 20); }
+    }
+
+    static final long INFINITE = Long.MAX_VALUE;
+
+    private record Wake(long tick, UUID id) {}
+
+    private final Map<UUID, LinkedHashMap<PotionEffectType, Entry>> states = new ConcurrentHashMap<>();
+    // 起床予定。古い予定は nextWake と一致しないので読み捨てる（キューは Bukkit の時だけ使う）
+    private final PriorityQueue<Wake> wakes = new PriorityQueue<>(Comparator.comparingLong(Wake::tick));
+    private final Map<UUID, Long> nextWake = new ConcurrentHashMap<>();
+    // 効果が変わった（すぐ描画し直す）ターゲット
+    private final Set<UUID> changed = ConcurrentHashMap.newKeySet();
+    private final Platform platform;
+    private final boolean useQueue;
+
+    EffectStateCache(Platform platform) {
+        this.platform = platform;
+        this.useQueue = !platform.regionized();
+    }
+
+    /** p の効果を数える tick */
+    long now(Player p) {
+        return platform.currentTick(p);
+    }
+
+    /** Bukkit：全体で1本の tick（Folia ではターゲットごとに {@link #now(Player)} を使う） */
+    long now() {
+        return platform.currentTick(null);
+    }
+
+    /** 表示を畳んでいた間の変化などをまとめて描画させる */
+    void markChanged(UUID id) {
+        changed.add(id);
+    }
+
+    /** Folia：このターゲットをこの tick に描画し直すべきか（効果の変化か起床時刻） */
+    boolean takeDue(UUID id, long now) {
+        boolean due = changed.remove(id);
+        Long wake = nextWake.get(id);
+        if (wake != null && wake <= now) {
+            nextWake.remove(id);
+            if (hasExpired(id, now)) {
+                Player p = Bukkit.getPlayer(id);
+                if (p != null) load(p);
+                changed.remove(id);
+            }
+            due = true;
+        }
+        return due;
+    }
+
+    /** 参加時・起動時に現在の効果を取り込む */
+    void load(Player p) {
+        LinkedHashMap<PotionEffectType, Entry> m = new LinkedHashMap<>();
+        long now = now(p);
+        for (PotionEffect eff : p.getActivePotionEffects()) m.put(eff.getType(), entry(eff, now));
+        states.put(p.getUniqueId(), m);
+        changed.add(p.getUniqueId());
+    }
+
+    void evict(UUID id) {
+        states.remove(id);
+        nextWake.remove(id);
+        changed.remove(id);
+    }
+
+    /** 表示順（付与順） */
+    Collection<Entry> effects(UUID id) {
+        LinkedHashMap<PotionEffectType, Entry> m = states.get(id);
+        return m == null ? Collections.emptyList() : m.values();
+    }
+
+    /**
+     * この tick に描画し直すべきターゲットを渡す。
+     * 終了時刻を過ぎた効果はここで実体と突き合わせる（隠れていた弱い効果への切り替わり等もここで拾う）。
+     */
+    void pollDue(long now, Consumer<UUID> sink) {
+        Wake w;
+        while ((w = wakes.peek()) != null && w.tick() <= now) {
+            wakes.poll();
+            Long cur = nextWake.get(w.id());
+            if (cur == null || cur != w.tick()) continue;
+            nextWake.remove(w.id());
+            if (hasExpired(w.id(), now)) {
+                Player p = Bukkit.getPlayer(w.id());
+                if (p != null) load(p);
+            }
+            changed.add(w.id());
+        }
+        for (UUID id : changed) sink.accept(id);
+        changed.clear();
+    }
+
+    /** 描画した直後に呼ぶ。次に表示が変わる tick（次の1秒境界か終了）で起こす */
+    void scheduleNext(UUID id, long now) {
+        scheduleNext(id, now, 20);
+    }
+
+    /** step tick ごとの境界か終了で起こす。step が 0 なら終了の時だけ（残り時間を出していない時） */
+    void scheduleNext(UUID id, long now, int step) {
+        long next = Long.MAX_VALUE;
+        for (Entry e : effects(id)) {
+            if (e.infinite()) continue;
+            long r = e.expiry - now;
+            next = Math.min(next, r <= 0 ? now + 1 : step <= 0 ? now + r : now + (r % step) + 1);
+        }
+        if (next == Long.MAX_VALUE) {
+            nextWake.remove(id); // 時間制の効果が無ければ起こさない
+            return;
+        }
+        Long cur = nextWake.get(id);
+        if (cur != null && cur == next) return;
+        nextWake.put(id, next);
+        if (useQueue) wakes.add(new Wake(next, id));
+    }
+
+    private boolean hasExpired(UUID id, long now) {
+        for (Entry e : effects(id)) if (!e.infinite() && e.expiry <= now) return true;
+        return false;
+    }
+
+    private static Entry entry(PotionEffect eff, long now) {
+        long expiry = eff.isInfinite() ? INFINITE : now + eff.getDuration();
+        return new Entry(eff.getType(), eff.getAmplifier(), expiry);
+    }
+
+    // ===== Events =====
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEffect(EntityPotionEffectEvent e) {
+        if (!(e.getEntity() instanceof Player)) return;
+        LinkedHashMap<PotionEffectType, Entry> m = states.get(e.getEntity().getUniqueId());
+        if (m == null) return; // 未ロード（参加処理前）
+        switch (e.getAction()) {
+            case ADDED, CHANGED -> {
+                // 上書きしない変更（弱い・短い効果）は今の効果がそのまま残り、新しい方は隠れた効果になるだけ
+                if (e.getAction() == EntityPotionEffectEvent.Action.CHANGED && !e.isOverride()) return;
+                PotionEffect eff = e.getNewEffect();
+                if (eff != null) m.put(eff.getType(), entry(eff, now((Player) e.getEntity())));
+            }
+            case REMOVED, CLEARED -> m.remove(e.getModifiedType());
+        }
+        changed.add(e.getEntity().getUniqueId());
+    }
+
+    /** リスポーンで新しいエンティティになると Folia の時計（経過 tick）が 0 に戻るので、取り込み直す */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerPostRespawnEvent e) {
+        if (states.containsKey(e.getPlayer().getUniqueId())) load(e.getPlayer());
+    }
+}
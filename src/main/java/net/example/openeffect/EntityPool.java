@@ -0,0 +1,66 @@
+package net.example.openeffect;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 使い終わった表示エンティティをワールドごとに保持して再利用する。
+ * spawn / remove の往復（とそれに伴う可視性の総当たり）を避けるためのもの。
+ * 預ける前の「見えない状態にする」処理は呼び出し側の責任。
+ * Folia では使わない（容量 0）が、念のためメソッドは排他にしておく。
+ */
+final class EntityPool<T extends Entity> {
+
+    private final int capacity;
+    private final Stats.Counter removes;
+    private final Map<UUID, ArrayDeque<T>> byWorld = new HashMap<>();
+    private int size;
+
+    EntityPool(int capacity, Stats.Counter removes) {
+        this.capacity = Math.max(0, capacity);
+        this.removes = removes;
+    }
+
+    /** 同じワールドで待機中のものを1体取り出す。無ければ null */
+    synchronized T acquire(World world) {
+        ArrayDeque<T> q = byWorld.get(world.getUID());
+        if (q == null) return null;
+        T e;
+        while ((e = q.poll()) != null) {
+            size--;
+            if (e.isValid()) return e;
+            e.remove(); // チャンクごとアンロードされた等
+            removes.inc();
+        }
+        return null;
+    }
+
+    /** 預ける。上限を超えた分は削除する */
+    synchronized void release(T e) {
+        if (e == null || e.isDead()) return;
+        if (size >= capacity) {
+            e.remove();
+            removes.inc();
+            return;
+        }
+        byWorld.computeIfAbsent(e.getWorld().getUID(), k -> new ArrayDeque<>()).add(e);
+        size++;
+    }
+
+    synchronized void clear() {
+        for (ArrayDeque<T> q : byWorld.values()) {
+            for (T e : q) {
+                if (e.isDead()) continue;
+                e.remove();
+                removes.inc();
+            }
+        }
+        byWorld.clear();
+        size = 0;
+    }
+}
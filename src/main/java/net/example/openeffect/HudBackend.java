@@ -0,0 +1,258 @@
+package net.example.openeffect;
+
+import io.papermc.paper.scoreboard.numbers.NumberFormat;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Criteria;
+import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.Objective;
+import org.bukkit.scoreboard.Scoreboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * エンティティを使わない方式：表示 ON の viewer ごとに、見ている（視線の円錐内で一番中心に近い）
+ * プレイヤー、いなければ一番近いプレイヤーの効果をアクションバーかサイドバーに出す。
+ * ターゲット側の行は DisplayManager がいつも通り作り（lastLines）、ここは viewer 側で
+ * 「注目先」か「その行」が変わった時だけ送る（アクションバーは消えないよう一定間隔で送り直す）。
+ * サイドバーは viewer 専用のスコアボードを表示 ON の間ずっと付けておき、注目先が無い時は行を消すだけにする
+ * （OFF・退出の時に、付ける前のスコアボードへ戻す）。
+ * 相手はチャンク単位の位置索引から hud.range 内の分だけ見る。Folia では viewer と同じリージョンの相手だけ
+ * （別リージョンのプレイヤーの位置はそのスレッドから読めない）。
+ */
+final class HudBackend implements DisplayBackend {
+
+    enum Mode { ACTIONBAR, SIDEBAR }
+
+    // アクションバーは約3秒で消えるので、それより少し短い間隔で送り直す
+    private static final long ACTIONBAR_KEEP = 40;
+    private static final int SIDEBAR_LINES = 15;
+    private static final Component SEPARATOR = Component.text(" | ");
+
+    /** viewer 1人分の状態。その viewer のスレッドからしか触らない */
+    private static final class View {
+        final Location eye = new Location(null, 0, 0, 0);
+        final Location other = new Location(null, 0, 0, 0);
+        UUID focus;
+        List<Component> shown;
+        long sentAt;
+        Scoreboard board;
+        Scoreboard original; // 付ける前の viewer のスコアボード（他プラグインのもの）
+        Objective objective;
+        int rows;
+        final List<UUID> near = new ArrayList<>(); // 相手の候補（使い回し）
+    }
+
+    private final DisplayManager dm;
+    private final Mode mode;
+    private final double range2;
+    private final int rangeChunks;
+    private final double cosCone;
+    private final boolean nearest;
+    private final int period;
+    private final Map<UUID, View> views = new ConcurrentHashMap<>();
+    // 全プレイヤーの位置（DisplayManager が移動・定期確認のたびに渡す）
+    private final ViewerGrid players = new ViewerGrid();
+
+    HudBackend(DisplayManager dm, ConfigurationSection cfg) {
+        this.dm = dm;
+        Mode m = "sidebar".equalsIgnoreCase(cfg == null ? null : cfg.getString("mode")) ? Mode.SIDEBAR : Mode.ACTIONBAR;
+        if (m == Mode.SIDEBAR && dm.platform().regionized()) {
+            dm.logger().warning("display.hud.mode: sidebar は Folia では使えません（スコアボード非対応）。actionbar で動作します");
+            m = Mode.ACTIONBAR;
+        }
+        this.mode = m;
+        double range = cfg == null ? 16 : cfg.getDouble("range", 16);
+        this.range2 = range * range;
+        this.rangeChunks = Math.max(1, (int) Math.ceil(range / 16.0));
+        this.cosCone = Math.cos(Math.toRadians(cfg == null ? 15 : cfg.getDouble("cone", 15)));
+        this.nearest = cfg == null || cfg.getBoolean("nearest", true);
+        this.period = Math.max(1, cfg == null ? 2 : cfg.getInt("updateTicks", 2));
+    }
+
+    // ===== DisplayBackend：ターゲット側にはエンティティを置かない =====
+    @Override
+    public List<Entity> render(Player target, List<Entity> ents, List<Component> prev, List<Component> lines) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void follow(Player target, List<Entity> ents) {}
+
+    @Override
+    public void release(List<Entity> ents) {
+        ents.clear();
+    }
+
+    /** viewer 側の表示を片付ける（サイドバーは元のスコアボードに戻す） */
+    @Override
+    public void clear() {
+        for (UUID id : views.keySet()) {
+            Player p = Bukkit.getPlayer(id);
+            if (p != null) detach(p, views.get(id));
+        }
+        views.clear();
+    }
+
+    @Override
+    public boolean adopt(Entity e) {
+        return false;
+    }
+
+    /** 位置の追従が要らない（移動イベントでは viewer の索引だけ更新する） */
+    @Override
+    public boolean followsTarget() {
+        return true;
+    }
+
+    @Override
+    public boolean usesEntities() {
+        return false;
+    }
+
+    // ===== viewer 側 =====
+    int period() {
+        return period;
+    }
+
+    /** プレイヤーの位置を相手探しの索引に反映（チャンクが変わった時だけ実際に動く） */
+    void track(UUID id, Location at) {
+        players.update(id, at);
+    }
+
+    /** 退出 */
+    void untrack(UUID id) {
+        players.remove(id);
+    }
+
+    /** hud.updateTicks ごとに、表示 ON の viewer それぞれについて呼ぶ */
+    void updateViewer(Player viewer, long now) {
+        View v = views.computeIfAbsent(viewer.getUniqueId(), k -> new View());
+        Player target = focus(viewer, v);
+        List<Component> lines = target == null ? null : dm.lines(target.getUniqueId());
+        if (lines == null || lines.isEmpty()) {
+            if (v.focus != null) hide(viewer, v);
+            return;
+        }
+        UUID id = target.getUniqueId();
+        boolean same = id.equals(v.focus) && lines == v.shown;
+        if (same && (mode == Mode.SIDEBAR || now - v.sentAt < ACTIONBAR_KEEP)) return;
+        if (mode == Mode.ACTIONBAR) showActionBar(viewer, target, lines);
+        else showSidebar(viewer, v, target, lines, !id.equals(v.focus));
+        v.focus = id;
+        v.shown = lines;
+        v.sentAt = now;
+    }
+
+    /** viewer が OFF になった・退出した */
+    void removeViewer(UUID id) {
+        View v = views.remove(id);
+        Player p = Bukkit.getPlayer(id);
+        if (v != null && p != null) detach(p, v);
+    }
+
+    /**
+     * 視線の円錐（hud.cone）内で一番中心に近いプレイヤー。いなければ（hud.nearest なら）範囲内で一番近いプレイヤー。
+     * 相手の位置は体の中央で判定する。
+     */
+    private Player focus(Player viewer, View v) {
+        Location eye = viewer.getLocation(v.eye);
+        World world = eye.getWorld();
+        double ex = eye.getX(), ey = eye.getY() + viewer.getEyeHeight(), ez = eye.getZ();
+        double yaw = Math.toRadians(eye.getYaw()), pitch = Math.toRadians(eye.getPitch());
+        double xz = Math.cos(pitch);
+        double dx = -xz * Math.sin(yaw), dy = -Math.sin(pitch), dz = xz * Math.cos(yaw);
+
+        Player best = null, near = null;
+        double bestCos = cosCone, nearD2 = range2;
+        boolean regionized = dm.platform().regionized();
+        v.near.clear();
+        players.collectNear(eye, rangeChunks, viewer.getUniqueId(), v.near);
+        for (UUID id : v.near) {
+            Player t = Bukkit.getPlayer(id);
+            if (t == null || (regionized && !Bukkit.isOwnedByCurrentRegion(t))) continue;
+            if (t.getWorld() != world || !viewer.canSee(t)) continue;
+            Location at = t.getLocation(v.other);
+            double tx = at.getX() - ex, ty = at.getY() + t.getHeight() * 0.5 - ey, tz = at.getZ() - ez;
+            double d2 = tx * tx + ty * ty + tz * tz;
+            if (d2 > range2 || d2 < 1e-6) continue;
+            double cos = (tx * dx + ty * dy + tz * dz) / Math.sqrt(d2);
+            if (cos >= bestCos) {
+                bestCos = cos;
+                best = t;
+            }
+            if (d2 < nearD2) {
+                nearD2 = d2;
+                near = t;
+            }
+        }
+        return best != null ? best : (nearest ? near : null);
+    }
+
+    private void showActionBar(Player viewer, Player target, List<Component> lines) {
+        Component text = Component.text(target.getName() + ": ")
+                .append(Component.join(JoinConfiguration.separator(SEPARATOR), lines));
+        viewer.sendActionBar(text);
+    }
+
+    private void showSidebar(Player viewer, View v, Player target, List<Component> lines, boolean retitle) {
+        if (v.board == null) {
+            v.board = Bukkit.getScoreboardManager().getNewScoreboard();
+            v.objective = v.board.registerNewObjective("openeffect", Criteria.DUMMY, Component.empty());
+            v.objective.numberFormat(NumberFormat.blank());
+        }
+        if (retitle || v.focus == null) v.objective.displayName(Component.text(target.getName()));
+        if (v.objective.getDisplaySlot() != DisplaySlot.SIDEBAR) v.objective.setDisplaySlot(DisplaySlot.SIDEBAR);
+        int n = Math.min(SIDEBAR_LINES, lines.size());
+        // 上から順に並ぶよう、スコアは行数から数え下げる。エントリ名は見えない色コードで一意にする
+        for (int i = 0; i < n; i++) {
+            var score = v.objective.getScore(entry(i));
+            score.setScore(n - i);
+            score.customName(lines.get(i));
+        }
+        for (int i = n; i < v.rows; i++) v.board.resetScores(entry(i));
+        v.rows = n;
+        Scoreboard cur = viewer.getScoreboard();
+        if (cur != v.board) {
+            v.original = cur;
+            viewer.setScoreboard(v.board);
+        }
+    }
+
+    /** 注目先が無くなった。サイドバーはスコアボードを付けたまま行と表示枠だけ外す */
+    private void hide(Player viewer, View v) {
+        if (mode == Mode.ACTIONBAR) {
+            viewer.sendActionBar(Component.empty());
+        } else if (v.board != null) {
+            for (int i = 0; i < v.rows; i++) v.board.resetScores(entry(i));
+            v.rows = 0;
+            v.objective.setDisplaySlot(null);
+        }
+        v.focus = null;
+        v.shown = null;
+    }
+
+    /** viewer が OFF・退出・停止。付ける前のスコアボードに戻す */
+    private void detach(Player viewer, View v) {
+        hide(viewer, v);
+        if (v.board != null && viewer.getScoreboard() == v.board)
+            viewer.setScoreboard(v.original != null ? v.original : Bukkit.getScoreboardManager().getMainScoreboard());
+        v.original = null;
+    }
+
+    private static String entry(int i) {
+        return ChatColor.values()[i].toString();
+    }
+}
@@ -0,0 +1,87 @@
+package net.example.openeffect;
+
+import org.bukkit.Keyed;
+import org.bukkit.NamespacedKey;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 言語ファイル（lang/&lt;language&gt;.yml）。
+ * 効果名は PotionEffectType の NamespacedKey で引く（minecraft 名前空間は "speed" のように省略形、
+ * それ以外は "namespace:key"）。見つからなければ同梱の en.yml、それも無ければキーを整形して使う。
+ * プラグインフォルダに同名ファイルがあればそちらを優先する（無ければ初回に書き出す）。
+ */
+final class Lang {
+
+    private final YamlConfiguration bundle;
+    private final Map<Keyed, String> names = new IdentityHashMap<>();
+
+    Lang(YamlConfiguration bundle) {
+        this.bundle = bundle;
+    }
+
+    static Lang load(JavaPlugin plugin, String language) {
+        YamlConfiguration fallback = resource(plugin, "en");
+        YamlConfiguration bundled = resource(plugin, language);
+        if (bundled == null) {
+            plugin.getLogger().warning("lang/" + language + ".yml がありません。en を使います");
+            language = "en";
+            bundled = fallback;
+        }
+        File file = new File(plugin.getDataFolder(), "lang/" + language + ".yml");
+        if (!file.exists()) plugin.saveResource("lang/" + language + ".yml", false);
+        YamlConfiguration cfg = YamlConfiguration.loadConfiguration(file);
+        if (bundled != fallback && fallback != null) bundled.setDefaults(fallback);
+        if (bundled != null) cfg.setDefaults(bundled);
+        return new Lang(cfg);
+    }
+
+    private static YamlConfiguration resource(JavaPlugin plugin, String language) {
+        InputStream in = plugin.getResource("lang/" + language + ".yml");
+        if (in == null) return null;
+        return YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    String get(String key, String def) {
+        return bundle.getString(key, def);
+    }
+
+    /** 効果名。type は PotionEffectType（登録済みのインスタンスなので同一性で引ける） */
+    String effectName(Keyed type) {
+        String n = names.get(type);
+        if (n == null) {
+            n = lookup(type.getKey());
+            names.put(type, n);
+        }
+        return n;
+    }
+
+    private String lookup(NamespacedKey key) {
+        String path = NamespacedKey.MINECRAFT.equals(key.getNamespace()) ? key.getKey() : key.toString();
+        String n = bundle.getString("effects." + path);
+        return n != null ? n : humanize(key.getKey());
+    }
+
+    /** "slow_falling" -> "Slow Falling" */
+    private static String humanize(String key) {
+        StringBuilder sb = new StringBuilder(key.length());
+        boolean upper = true;
+        for (char c : key.toCharArray()) {
+            if (c == '_') {
+                sb.append(' ');
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+}
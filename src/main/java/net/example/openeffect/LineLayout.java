@@ -0,0 +1,106 @@
+package net.example.openeffect;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 行の位置計算：目線から box.topUp 上を上端とし、box.step ずつ下へ積む。
+ * offsetRight / offsetForward は水平にした向き（yaw）基準でずらす。
+ * ターゲットごとに作業領域（{@link Frame}）を持ち、向きの基底は yaw が変わった時だけ計算し直す。
+ * 位置はすべて double で持ち、返す Location も使い回すので、定常状態では何も確保しない
+ * （返した Location は次の呼び出しで書き換わる。テレポートに渡したらすぐ手放すこと）。
+ */
+final class LineLayout {
+
+    /** ターゲット1人分の作業領域。そのターゲットのスレッドからしか触らない */
+    static final class Frame {
+        // getLocation の書き込み先
+        private final Location at = new Location(null, 0, 0, 0);
+        // linePos が返す位置
+        private final Location out = new Location(null, 0, 0, 0);
+        // 水平の前方・右方向（単位ベクトル）。yaw が変わった時だけ作り直す
+        private float yaw = Float.NaN;
+        private double fx, fz, rx, rz;
+        // 上端の行の位置
+        private double topX, topY, topZ;
+
+        /** 最後に update した時のターゲット位置（足元） */
+        Location at() { return at; }
+    }
+
+    private final double offRight, offForward;
+    private final double topUp, stepDown;
+    private final Map<UUID, Frame> frames = new ConcurrentHashMap<>();
+
+    LineLayout(double offRight, double offForward, double topUp, double stepDown) {
+        this.offRight = offRight;
+        this.offForward = offForward;
+        this.topUp = topUp;
+        this.stepDown = stepDown;
+    }
+
+    double topUp() { return topUp; }
+    double stepDown() { return stepDown; }
+    boolean hasHorizontalOffset() { return offRight != 0 || offForward != 0; }
+
+    /** ターゲットの今の位置と向きから上端を求め直す */
+    Frame update(Player target) {
+        Frame f = frames.computeIfAbsent(target.getUniqueId(), k -> new Frame());
+        Location at = target.getLocation(f.at);
+        double ox = 0, oz = 0;
+        if (hasHorizontalOffset()) {
+            float yaw = at.getYaw();
+            if (yaw != f.yaw) basis(f, yaw);
+            ox = f.rx * offRight + f.fx * offForward;
+            oz = f.rz * offRight + f.fz * offForward;
+        }
+        f.topX = at.getX() + ox;
+        f.topY = at.getY() + target.getEyeHeight() + topUp;
+        f.topZ = at.getZ() + oz;
+        return f;
+    }
+
+    /** 直近の update の結果（まだ無ければ今求める） */
+    Frame frame(Player target) {
+        Frame f = frames.get(target.getUniqueId());
+        return f != null ? f : update(target);
+    }
+
+    /** index 行目（0 が上端）の位置。返り値は f の使い回し */
+    Location linePos(Frame f, int index) {
+        World w = f.at.getWorld();
+        if (f.out.getWorld() != w) f.out.setWorld(w);
+        f.out.setX(f.topX);
+        f.out.setY(f.topY - stepDown * index);
+        f.out.setZ(f.topZ);
+        return f.out;
+    }
+
+    void remove(UUID id) {
+        frames.remove(id);
+    }
+
+    void prune(Predicate<UUID> gone) {
+        frames.keySet().removeIf(gone);
+    }
+
+    void clear() {
+        frames.clear();
+    }
+
+    /** yaw から水平の前方（Bukkit の向きと同じ：yaw 0 が +Z）と右方向を求める */
+    private static void basis(Frame f, float yaw) {
+        double rad = Math.toRadians(yaw);
+        f.fx = -Math.sin(rad);
+        f.fz = Math.cos(rad);
+        f.rx = -f.fz;
+        f.rz = f.fx;
+        f.yaw = yaw;
+    }
+}
@@ -0,0 +1,68 @@
+package net.example.openeffect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 1行分の書式（例 "{name} {level} {time}"）を起動時に分解しておき、
+ * 描画時は部品をつなぐだけにする（String.format を使わない）。
+ * 使えるプレースホルダは {name} {level} {time}。それ以外の {..} は文字として残す。
+ */
+final class LineTemplate {
+
+    private static final String[] PLACEHOLDERS = {"{name}", "{level}", "{time}"};
+    private static final int NAME = 0, LEVEL = 1, TIME = 2;
+
+    // 文字列なら固定部分、Integer ならプレースホルダ
+    private final Object[] parts;
+    private final int fixedLength;
+
+    private LineTemplate(Object[] parts, int fixedLength) {
+        this.parts = parts;
+        this.fixedLength = fixedLength;
+    }
+
+    static LineTemplate compile(String pattern) {
+        List<Object> parts = new ArrayList<>();
+        int fixed = 0;
+        StringBuilder lit = new StringBuilder();
+        int i = 0;
+        outer:
+        while (i < pattern.length()) {
+            for (int p = 0; p < PLACEHOLDERS.length; p++) {
+                if (pattern.startsWith(PLACEHOLDERS[p], i)) {
+                    if (lit.length() > 0) {
+                        parts.add(lit.toString());
+                        fixed += lit.length();
+                        lit.setLength(0);
+                    }
+                    parts.add(p);
+                    i += PLACEHOLDERS[p].length();
+                    continue outer;
+                }
+            }
+            lit.append(pattern.charAt(i++));
+        }
+        if (lit.length() > 0) {
+            parts.add(lit.toString());
+            fixed += lit.length();
+        }
+        return new LineTemplate(parts.toArray(), fixed);
+    }
+
+    String format(String name, String level, String time) {
+        StringBuilder sb = new StringBuilder(fixedLength + name.length() + level.length() + time.length());
+        for (Object part : parts) {
+            if (part instanceof String) {
+                sb.append((String) part);
+                continue;
+            }
+            switch ((Integer) part) {
+                case NAME:  sb.append(name);  break;
+                case LEVEL: sb.append(level); break;
+                case TIME:  sb.append(time);  break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package net.example.openeffect;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * プレイヤー名 ⇔ UUID の索引。サーバーの usercache.json から作り、参加のたびに更新する。
+ * コマンドの名前解決と一覧表示はここだけを見て、getOfflinePlayer（プロフィール問い合わせで止まりうる）を main で呼ばない。
+ * 索引に無い名前だけ、専用スレッドで getOfflinePlayer に問い合わせる。
+ */
+final class NameIndex {
+
+    private final Logger log;
+    private final Map<String, UUID> byName = new ConcurrentHashMap<>(); // 小文字の名前 -> UUID
+    private final Map<UUID, String> byId = new ConcurrentHashMap<>();
+    private final ExecutorService lookup = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OpenEffect-lookup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    NameIndex(Logger log) {
+        this.log = log;
+    }
+
+    /** usercache.json を別スレッドで読む。参加で入った分は上書きしない */
+    void loadAsync(Path usercache) {
+        lookup.execute(() -> read(usercache));
+    }
+
+    private void read(Path file) {
+        if (!Files.isRegularFile(file)) return;
+        int n = 0;
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (JsonElement el : JsonParser.parseReader(r).getAsJsonArray()) {
+                if (!el.isJsonObject()) continue;
+                JsonObject o = el.getAsJsonObject();
+                if (!o.has("name") || !o.has("uuid")) continue;
+                UUID id = UUID.fromString(o.get("uuid").getAsString());
+                if (byId.containsKey(id)) continue;
+                put(id, o.get("name").getAsString());
+                n++;
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.log(Level.WARNING, file + " を読めません（名前の索引は参加時の分だけになります）", ex);
+            return;
+        }
+        log.info("名前の索引に " + n + " 人を読み込みました");
+    }
+
+    /**
+     * 参加時など。名前が変わっていれば古い名前は外す。
+     * @return 表示用の名前が変わった（初めて分かった場合を含む）なら true
+     */
+    boolean put(UUID id, String name) {
+        String old = byId.put(id, name);
+        if (old != null && !old.equalsIgnoreCase(name)) byName.remove(lower(old), id);
+        byName.put(lower(name), id);
+        return !name.equals(old);
+    }
+
+    /** 表示用の名前（分からなければ UUID） */
+    String name(UUID id) {
+        String n = byId.get(id);
+        return n != null ? n : id.toString();
+    }
+
+    /**
+     * 名前から UUID を引く。索引にあればその場で完了し、無ければ専用スレッドで問い合わせる
+     * （一度も参加していない名前は null）。
+     */
+    CompletableFuture<UUID> resolve(String name) {
+        UUID id = byName.get(lower(name));
+        if (id != null) return CompletableFuture.completedFuture(id);
+        return CompletableFuture.supplyAsync(() -> lookupBlocking(name), lookup);
+    }
+
+    /** 一覧表示用：名前に置き換えて並べる（人数が多いので専用スレッドで） */
+    CompletableFuture<List<String>> sortedNames(Collection<UUID> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<String> out = new ArrayList<>(ids.size());
+            for (UUID id : ids) out.add(name(id));
+            out.sort(String.CASE_INSENSITIVE_ORDER);
+            return out;
+        }, lookup);
+    }
+
+    private UUID lookupBlocking(String name) {
+        OfflinePlayer off = Bukkit.getOfflinePlayer(name);
+        if (!off.hasPlayedBefore() && !off.isOnline()) return null;
+        put(off.getUniqueId(), off.getName() != null ? off.getName() : name);
+        return off.getUniqueId();
+    }
+
+    void close() {
+        lookup.shutdownNow();
+    }
+
+    private static String lower(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+}
@@ -3,60 +3,101 @@ package net.example.openeffect;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
 import org.bukkit.command.*;
+import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Player;
+import org.bukkit.entity.TextDisplay;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
 
 public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecutor {
 
-    private final Set<UUID> enabled = new HashSet<>();
-    private final Set<UUID> owners  = new HashSet<>();
-    private final Set<UUID> members = new HashSet<>();
     private final Set<UUID> opCache = new HashSet<>(); // ★起動時の管理者キャッシュ
 
+    private Platform platform;
+    private Stats stats;
+    private QosController qos;
+    private NameIndex names;
+    private RoleStorage roles;
+    private EffectStateCache effects;
     private DisplayManager displays;
 
     @Override
     public void onEnable() {
         saveDefaultConfig();
-        loadAll();
+        platform = Platform.detect(this, getConfig().getString("scheduler.mode", "auto"));
+        stats = new Stats(getConfig().getBoolean("stats.jfr", true));
+        names = new NameIndex(getLogger());
+        for (Player p : Bukkit.getOnlinePlayers()) names.put(p.getUniqueId(), p.getName());
+        names.loadAsync(new File(Bukkit.getWorldContainer(), "usercache.json").toPath());
+        roles = openStorage();
+        for (Player p : Bukkit.getOnlinePlayers()) roles.load(p.getUniqueId()); // /reload 対策
 
         // --- 起動時に op.json を読み込んでキャッシュ＋ownersに追加 ---
         opCache.clear();
         for (OfflinePlayer op : Bukkit.getOperators()) {
             if (op.getUniqueId() != null) {
                 opCache.add(op.getUniqueId());
-                owners.add(op.getUniqueId());
+                roles.update(op.getUniqueId(), f -> f | RoleStorage.OWNER);
             }
         }
-        saveAll();
 
+        effects = new EffectStateCache(platform);
+        for (Player p : Bukkit.getOnlinePlayers()) effects.load(p);
+        // サーバーの MSPT / TPS はリージョンごとに別なので、Folia では自分の処理時間だけで判断する
+        qos = new QosController(stats, getLogger(), getConfig().getConfigurationSection("qos"), !platform.regionized());
         displays = new DisplayManager(this);
+        qos.onChange(displays::onQosChange);
 
         registerCommand("open", this);
         registerCommand("openeffect", this);
 
-        displays.ensureAllTargets();
+        // 前回クラッシュ等で残った表示エンティティを引き取る（Folia ではチャンクの読み込み時にだけ行う）
+        if (!platform.regionized()) {
+            int n = 0;
+            for (World w : Bukkit.getWorlds()) n += displays.reclaim(w.getEntitiesByClasses(ArmorStand.class, TextDisplay.class));
+            if (n > 0) getLogger().info("残っていた表示エンティティを " + n + " 体引き取りました");
+        }
+
+        // viewer を先に登録しておく（近くに viewer がいないターゲットは表示を出さない）
         for (Player v : Bukkit.getOnlinePlayers()) applyVisibilityFor(v);
+        displays.ensureAllTargets();
 
-        int period = Math.max(1, getConfig().getInt("updateTicks", 1));
-        Bukkit.getScheduler().runTaskTimer(this, () -> {
-            displays.ensureAllTargets();
-            displays.updateAll();
-        }, period, period);
+        // Bukkit は全体で1本、Folia はターゲットごとに所属リージョンで回す
+        if (platform.regionized()) for (Player p : Bukkit.getOnlinePlayers()) startTargetTask(p);
+        else platform.repeatGlobal(displays::tick, 1);
+        if (qos.enabled()) platform.repeatGlobal(() -> qos.evaluate(20), 20);
+        int saveEvery = Math.max(1, getConfig().getInt("saveIntervalTicks", 100));
+        platform.repeatGlobal(roles::flush, saveEvery); // 書き出しの時間は保存スレッド側で save に数える
 
         Bukkit.getPluginManager().registerEvents(this, this);
+        Bukkit.getPluginManager().registerEvents(effects, this);
         getLogger().info("OpenEffect enabled 1.2.0");
     }
 
+    private void startTargetTask(Player p) {
+        platform.repeatFor(p, () -> displays.tickTarget(p), 1);
+    }
+
     private void registerCommand(String name, TabExecutor exec) {
         PluginCommand cmd = getCommand(name);
         if (cmd == null) throw new IllegalStateException("command " + name + " not found");
@@ -66,37 +107,69 @@ public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecuto
 
     @Override
     public void onDisable() {
-        if (displays != null) displays.despawnAll();
-        saveAll();
+        if (platform != null) platform.cancelAll();
+        if (displays != null) displays.shutdown();
+        if (roles != null) roles.close(); // 保留中の変更をここで同期保存
+        if (stats != null) stats.close();
+        if (names != null) names.close();
         getLogger().info("OpenEffect disabled.");
     }
 
     // ===== Events =====
+    // 役割の行は参加前に非同期で読み込んでおく（退出時に破棄）
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) roles.load(e.getUniqueId());
+    }
     @EventHandler public void onJoin(PlayerJoinEvent e) {
-        displays.ensureTarget(e.getPlayer());
+        // 一覧に載る（役割のある）プレイヤーの名前が変わった時だけ作り直させる
+        if (names.put(e.getPlayer().getUniqueId(), e.getPlayer().getName()) && roles.flags(e.getPlayer().getUniqueId()) != 0)
+            listCache.clear();
+        effects.load(e.getPlayer());
         applyVisibilityFor(e.getPlayer());
+        displays.ensureTarget(e.getPlayer());
+        if (platform.regionized()) startTargetTask(e.getPlayer());
     }
     @EventHandler public void onQuit(PlayerQuitEvent e) {
         displays.removeTarget(e.getPlayer().getUniqueId());
-        saveAll();
+        effects.evict(e.getPlayer().getUniqueId());
+        displays.removeViewer(e.getPlayer().getUniqueId());
+        roles.evict(e.getPlayer().getUniqueId());
     }
     @EventHandler public void onMove(PlayerMoveEvent e) {
-        if (!getConfig().getBoolean("updateOnMove", true)) return;
-        if (e.getFrom().toVector().distanceSquared(e.getTo().toVector()) < 1.0E-6) return;
-        displays.updateOne(e.getPlayer());
+        displays.onMove(e.getPlayer(), e.getTo());
     }
+    // テレポート等では騎乗表示が降ろされるので、次の更新で確認させる
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent e) { displays.markMoved(e.getPlayer().getUniqueId()); }
+    @EventHandler public void onWorldChange(PlayerChangedWorldEvent e) { displays.markMoved(e.getPlayer().getUniqueId()); }
+    @EventHandler public void onRespawn(PlayerRespawnEvent e) { displays.markMoved(e.getPlayer().getUniqueId()); }
+    // 読み込まれたチャンクに残っていた表示エンティティをまとめて引き取る
+    @EventHandler public void onEntitiesLoad(EntitiesLoadEvent e) { displays.reclaim(e.getEntities()); }
+
+    EffectStateCache effects() { return effects; }
+    Platform platform() { return platform; }
+    Stats stats() { return stats; }
+    QosController qos() { return qos; }
+    RoleStorage roles() { return roles; }
 
     // ===== Visibility =====
-    public boolean isOwner(UUID id) { return owners.contains(id); }
-    public boolean isMember(UUID id) { return members.contains(id); }
+    public boolean isOwner(UUID id) { return roles.has(id, RoleStorage.OWNER); }
+    public boolean isMember(UUID id) { return roles.has(id, RoleStorage.MEMBER); }
     public boolean canUse(Player p) {
-        return (isOwner(p.getUniqueId()) || isMember(p.getUniqueId())) && enabled.contains(p.getUniqueId());
+        int f = roles.flags(p.getUniqueId());
+        return (f & (RoleStorage.OWNER | RoleStorage.MEMBER)) != 0 && (f & RoleStorage.ENABLED) != 0;
     }
     public boolean canManage(Player p) { return isOwner(p.getUniqueId()); }
 
     private void applyVisibilityFor(Player viewer) {
         displays.applyVisibility(viewer, canUse(viewer));
     }
+    /** 権限変更後、オンラインなら可視性を反映 */
+    private void refreshVisibility(UUID id) {
+        Player p = Bukkit.getPlayer(id);
+        if (p != null) applyVisibilityFor(p);
+    }
 
     // ===== Commands =====
     @Override
@@ -121,12 +194,12 @@ public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecuto
             return true;
         }
         if (args[1].equalsIgnoreCase("on")) {
-            enabled.add(p.getUniqueId()); saveAll();
-            displays.applyVisibility(p, true);
+            roles.set(p.getUniqueId(), RoleStorage.ENABLED, true);
+            applyVisibilityFor(p);
             p.sendMessage(color("&aエフェクト表示を ON にしました!"));
         } else if (args[1].equalsIgnoreCase("off")) {
-            enabled.remove(p.getUniqueId()); saveAll();
-            displays.applyVisibility(p, false);
+            roles.set(p.getUniqueId(), RoleStorage.ENABLED, false);
+            applyVisibilityFor(p);
             p.sendMessage(color("&eエフェクト表示を OFF にしました!"));
         } else {
             p.sendMessage(color("&c使い方: /open effect <on|off>"));
@@ -135,6 +208,8 @@ public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecuto
     }
 
     private boolean handleManage(CommandSender sender, String[] args) {
+        // stats はコンソールからも使えるようにする
+        if (args.length >= 1 && args[0].equalsIgnoreCase("stats")) return cmdStats(sender, args);
         if (!(sender instanceof Player)) {
             sender.sendMessage(color("&cゲーム内で実行してください。"));
             return true;
@@ -147,12 +222,15 @@ public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecuto
             return true;
         }
 
-        // --- owners/members/all ---
-        if (args.length == 1) {
-            switch (args[0].toLowerCase()) {
-                case "members": return cmdMembers(p);
-                case "owners":  return cmdOwners(p);
-                case "all":     return cmdAll(p);
+        // --- owners/members/all [ページ] ---
+        if (args.length == 1 || args.length == 2) {
+            int page = args.length == 2 ? parsePage(args[1]) : 1;
+            if (page > 0) {
+                switch (args[0].toLowerCase()) {
+                    case "members": return cmdMembers(p, page);
+                    case "owners":  return cmdOwners(p, page);
+                    case "all":     return cmdAll(p, page);
+                }
             }
         }
 
@@ -174,101 +252,174 @@ public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecuto
             return cmdRemove(p, args[1], args[2]);
         }
 
-        p.sendMessage(color("&c使い方: /openeffect <add|remove|members|owners|all> ..."));
+        p.sendMessage(color("&c使い方: /openeffect <add|remove|members|owners|all|stats> ..."));
         return true;
     }
 
+    // 名前の解決は索引から（無ければ別スレッドで問い合わせ）、結果は sender のスレッドで反映する
     private boolean cmdAdd(Player sender, String role, String name) {
-        UUID target = resolvePlayerUUID(name);
+        if (!role.equalsIgnoreCase("owner") && !role.equalsIgnoreCase("member")) {
+            sender.sendMessage(color("&c使い方: /openeffect add <member|owner> <プレイヤー名>"));
+            return true;
+        }
+        names.resolve(name).whenComplete((target, ex) ->
+                platform.runFor(sender, () -> applyAdd(sender, role, name, ex == null ? target : null)));
+        return true;
+    }
+
+    private void applyAdd(Player sender, String role, String name, UUID target) {
         if (target == null) {
             sender.sendMessage(color("&cこのプレイヤー名は存在していません!"));
-            return true;
+            return;
         }
         if (role.equalsIgnoreCase("owner")) {
             if (target.equals(sender.getUniqueId())) {
                 sender.sendMessage(color("&c自分を追加することはできません!"));
-                return true;
+                return;
             }
-            owners.add(target); members.remove(target); saveAll();
-            sender.sendMessage(color("&a" + name + " をオーナーとして追加に成功しました!"));
-        } else if (role.equalsIgnoreCase("member")) {
-            members.add(target); saveAll();
-            sender.sendMessage(color("&a" + name + " をメンバーとして追加に成功しました!"));
+            afterUpdate(sender, target, roles.update(target, f -> (f | RoleStorage.OWNER) & ~RoleStorage.MEMBER),
+                    old -> "&a" + name + " をオーナーとして追加に成功しました!");
         } else {
-            sender.sendMessage(color("&c使い方: /openeffect add <member|owner> <プレイヤー名>"));
+            afterUpdate(sender, target, roles.update(target, f -> f | RoleStorage.MEMBER),
+                    old -> "&a" + name + " をメンバーとして追加に成功しました!");
         }
-        return true;
     }
 
     private boolean cmdRemove(Player sender, String role, String name) {
-        UUID target = resolvePlayerUUID(name);
+        if (!role.equalsIgnoreCase("owner") && !role.equalsIgnoreCase("member")) {
+            sender.sendMessage(color("&c使い方: /openeffect remove <member|owner> <プレイヤー名>"));
+            return true;
+        }
+        names.resolve(name).whenComplete((target, ex) ->
+                platform.runFor(sender, () -> applyRemove(sender, role, name, ex == null ? target : null)));
+        return true;
+    }
+
+    private void applyRemove(Player sender, String role, String name, UUID target) {
         if (target == null) {
             sender.sendMessage(color("&cこのプレイヤー名は存在していません!"));
-            return true;
+            return;
         }
         if (role.equalsIgnoreCase("owner")) {
             if (opCache.contains(target)) {
                 sender.sendMessage(color("&cこの人は管理者なので削除できません!"));
-                return true;
+                return;
             }
             if (target.equals(sender.getUniqueId())) {
                 sender.sendMessage(color("&c自分自身を削除することはできません!"));
-                return true;
+                return;
             }
-            if (owners.remove(target)) {
-                saveAll();
-                sender.sendMessage(color("&aオーナー " + name + " の削除に成功しました!"));
-            } else sender.sendMessage(color("&cオーナーに " + name + " はいません!"));
-        } else if (role.equalsIgnoreCase("member")) {
-            if (members.remove(target)) {
-                enabled.remove(target); saveAll();
-                sender.sendMessage(color("&aメンバー " + name + " の削除に成功しました!"));
-            } else sender.sendMessage(color("&cメンバーに " + name + " はいません!"));
+            afterUpdate(sender, target, roles.update(target, f -> f & ~RoleStorage.OWNER),
+                    old -> (old & RoleStorage.OWNER) != 0
+                            ? "&aオーナー " + name + " の削除に成功しました!"
+                            : "&cオーナーに " + name + " はいません!");
         } else {
-            sender.sendMessage(color("&c使い方: /openeffect remove <member|owner> <プレイヤー名>"));
+            // メンバーだった時だけ、表示 ON も一緒に下ろす
+            afterUpdate(sender, target,
+                    roles.update(target, f -> (f & RoleStorage.MEMBER) != 0
+                            ? f & ~(RoleStorage.MEMBER | RoleStorage.ENABLED) : f),
+                    old -> (old & RoleStorage.MEMBER) != 0
+                            ? "&aメンバー " + name + " の削除に成功しました!"
+                            : "&cメンバーに " + name + " はいません!");
         }
+    }
+
+    /** 役割の書き換えが終わったら、sender のスレッドで可視性を反映して結果を伝える */
+    private void afterUpdate(Player sender, UUID target, CompletableFuture<Integer> update,
+                             IntFunction<String> message) {
+        update.whenComplete((old, ex) -> platform.runFor(sender, () -> {
+            listCache.clear();
+            if (ex != null) {
+                sender.sendMessage(color("&c役割の保存に失敗しました!"));
+                return;
+            }
+            refreshVisibility(target);
+            sender.sendMessage(color(message.apply(old)));
+        }));
+    }
+
+    // 一覧は名前の索引から作る（getOfflinePlayer は呼ばない）。PAGE_SIZE 人ずつ
+    // 読み込みと並べ替えは別スレッドで行い、返信は p のスレッドで送る。並べた一覧は役割の変更か、役割のあるプレイヤーの改名まで使い回す
+    private static final int PAGE_SIZE = 10;
+    private final Map<Integer, CompletableFuture<List<String>>> listCache = new ConcurrentHashMap<>();
+
+    private boolean cmdMembers(Player p, int page) { return listRole(p, "Members", RoleStorage.MEMBER, page); }
+    private boolean cmdOwners(Player p, int page)  { return listRole(p, "Owners", RoleStorage.OWNER, page); }
+    private boolean cmdAll(Player p, int page) {
+        roleNames(RoleStorage.OWNER).thenCombine(roleNames(RoleStorage.MEMBER), List::of)
+                .whenComplete((both, ex) -> platform.runFor(p, () -> {
+                    sendPage(p, "Owners", ex == null ? both.get(0) : null, page);
+                    sendPage(p, "Members", ex == null ? both.get(1) : null, page);
+                }));
         return true;
     }
 
-    private boolean cmdMembers(Player p) {
-        p.sendMessage(color("&eMembers:"));
-        for (UUID id : members) {
-            OfflinePlayer op = Bukkit.getOfflinePlayer(id);
-            p.sendMessage(color(op.getName() != null ? op.getName() : id.toString()));
-        }
+    private boolean listRole(Player p, String title, int flag, int page) {
+        roleNames(flag).whenComplete((list, ex) ->
+                platform.runFor(p, () -> sendPage(p, title, ex == null ? list : null, page)));
         return true;
     }
-    private boolean cmdOwners(Player p) {
-        p.sendMessage(color("&eOwners:"));
-        for (UUID id : owners) {
-            OfflinePlayer op = Bukkit.getOfflinePlayer(id);
-            p.sendMessage(color(op.getName() != null ? op.getName() : id.toString()));
+
+    private CompletableFuture<List<String>> roleNames(int flag) {
+        CompletableFuture<List<String>> f = listCache.computeIfAbsent(flag,
+                k -> roles.list(k).thenCompose(names::sortedNames));
+        if (f.isCompletedExceptionally()) listCache.remove(flag, f); // 失敗は次回読み直す
+        return f;
+    }
+
+    private void sendPage(Player p, String title, List<String> list, int page) {
+        if (list == null) {
+            p.sendMessage(color("&c" + title + " の一覧を読み込めませんでした!"));
+            return;
         }
-        return true;
+        int pages = Math.max(1, (list.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        int cur = Math.min(Math.max(1, page), pages);
+        p.sendMessage(color("&e" + title + " (" + list.size() + ") " + cur + "/" + pages + ":"));
+        for (int i = (cur - 1) * PAGE_SIZE; i < Math.min(list.size(), cur * PAGE_SIZE); i++) p.sendMessage(color(list.get(i)));
     }
-    private boolean cmdAll(Player p) { cmdOwners(p); cmdMembers(p); return true; }
-
-    private UUID resolvePlayerUUID(String name) {
-        Player on = Bukkit.getPlayerExact(name);
-        if (on != null) return on.getUniqueId();
-        OfflinePlayer off = Bukkit.getOfflinePlayer(name);
-        if (off != null && (off.hasPlayedBefore() || off.isOnline())) return off.getUniqueId();
-        return null;
+
+    private static int parsePage(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean cmdStats(CommandSender sender, String[] args) {
+        if (sender instanceof Player && !canManage((Player) sender)) {
+            sender.sendMessage(color("&cあなたにはこのコマンドを実行できる権限がありません!"));
+            return true;
+        }
+        if (args.length == 2 && args[1].equalsIgnoreCase("reset")) {
+            stats.reset();
+            sender.sendMessage(color("&a統計をリセットしました!"));
+            return true;
+        }
+        if (args.length != 1) {
+            sender.sendMessage(color("&c使い方: /openeffect stats [reset]"));
+            return true;
+        }
+        sender.sendMessage(color("&eOpenEffect stats:"));
+        for (String line : stats.report()) sender.sendMessage(line);
+        sender.sendMessage(qos.describe());
+        return true;
     }
 
     private String color(String s) { return ChatColor.translateAlternateColorCodes('&', s); }
 
-    private void loadAll() {
-        enabled.clear(); owners.clear(); members.clear();
-        enabled.addAll(getConfig().getStringList("enabled").stream().map(UUID::fromString).collect(Collectors.toSet()));
-        owners.addAll(getConfig().getStringList("owners").stream().map(UUID::fromString).collect(Collectors.toSet()));
-        members.addAll(getConfig().getStringList("members").stream().map(UUID::fromString).collect(Collectors.toSet()));
-    }
-    private void saveAll() {
-        getConfig().set("enabled", enabled.stream().map(UUID::toString).collect(Collectors.toList()));
-        getConfig().set("owners", owners.stream().map(UUID::toString).collect(Collectors.toList()));
-        getConfig().set("members", members.stream().map(UUID::toString).collect(Collectors.toList()));
-        saveConfig();
+    /** storage.type に応じて役割の保存先を開く（sqlite を開けなければ yaml に戻す） */
+    private RoleStorage openStorage() {
+        String type = getConfig().getString("storage.type", "yaml");
+        if ("sqlite".equalsIgnoreCase(type)) {
+            try {
+                return new SqliteRoleStorage(getDataFolder().toPath().resolve(getConfig().getString("storage.file", "roles.db")),
+                        getConfig(), getLogger(), stats);
+            } catch (SQLException ex) {
+                getLogger().log(Level.SEVERE, "SQLite を開けません。yaml で起動します", ex);
+            }
+        }
+        return new YamlRoleStorage(this, stats);
     }
 
     @Override
@@ -278,13 +429,19 @@ public class OpenEffectPlugin extends JavaPlugin implements Listener, TabExecuto
             if (args.length == 2 && "effect".equalsIgnoreCase(args[0])) return Arrays.asList("on","off");
         }
         if (c.getName().equalsIgnoreCase("openeffect")) {
-            if (!(s instanceof Player)) return Collections.emptyList();
+            if (!(s instanceof Player)) {
+                if (args.length == 1) return Collections.singletonList("stats");
+                if (args.length == 2 && "stats".equalsIgnoreCase(args[0])) return Collections.singletonList("reset");
+                return Collections.emptyList();
+            }
             Player p = (Player) s; boolean mgr = canManage(p);
             if (args.length == 1) {
                 List<String> base = new ArrayList<>(Arrays.asList("members","owners","all"));
-                if (mgr) base.addAll(Arrays.asList("add","remove"));
+                if (mgr) base.addAll(Arrays.asList("add","remove","stats"));
                 return base;
             }
+            if (args.length == 2 && "stats".equalsIgnoreCase(args[0]))
+                return mgr ? Collections.singletonList("reset") : Collections.emptyList();
             if (args.length == 2 && (args[0].equalsIgnoreCase("add") || args[0].equalsIgnoreCase("remove")))
                 return mgr ? Arrays.asList("member","owner") : Collections.emptyList();
         }
@@ -0,0 +1,134 @@
+package net.example.openeffect;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * スレッドモデルの差を吸収する。
+ * Bukkit：すべて main スレッド。Folia：エンティティごとに所属リージョンのスレッドで動かす。
+ * scheduler.mode（auto / bukkit / folia）で選び、auto なら Folia の有無で決める。
+ */
+interface Platform {
+
+    /** リージョン並列（Folia）で動いているか */
+    boolean regionized();
+
+    /**
+     * 効果の残り時間に使う tick。Bukkit は全体の tick（p は使わない）。
+     * Folia には全体共通の tick が無く、効果は p のリージョンの tick で減るので、それと一緒に進む p の経過 tick を使う。
+     */
+    long currentTick(Player p);
+
+    /** 全体で1本の定期タスク */
+    void repeatGlobal(Runnable task, long period);
+
+    /** p の所属スレッドで毎 period tick 動く定期タスク（p の退出で止まる） */
+    void repeatFor(Player p, Runnable task, long period);
+
+    /** e の所属スレッドで実行（今そのスレッドなら即時。非同期スレッドからも呼べる） */
+    void runFor(Entity e, Runnable task);
+
+    /** 位置合わせ。Folia では同期テレポートが使えない */
+    void teleport(Entity e, Location to, Runnable then);
+
+    /** プラグインのタスクをすべて止める */
+    void cancelAll();
+
+    static Platform detect(Plugin plugin, String mode) {
+        boolean folia;
+        if ("folia".equalsIgnoreCase(mode)) folia = true;
+        else if ("bukkit".equalsIgnoreCase(mode)) folia = false;
+        else folia = isFolia();
+        return folia ? new FoliaPlatform(plugin) : new BukkitPlatform(plugin);
+    }
+
+    private static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /** 単一 main スレッド（従来どおり） */
+    final class BukkitPlatform implements Platform {
+        private final Plugin plugin;
+
+        BukkitPlatform(Plugin plugin) { this.plugin = plugin; }
+
+        @Override public boolean regionized() { return false; }
+        @Override public long currentTick(Player p) { return Bukkit.getCurrentTick(); }
+
+        @Override
+        public void repeatGlobal(Runnable task, long period) {
+            Bukkit.getScheduler().runTaskTimer(plugin, task, period, period);
+        }
+
+        @Override
+        public void repeatFor(Player p, Runnable task, long period) {
+            // Folia のエンティティスケジューラと同じく、退出したら止める（再参加後は別の Player になる）
+            Bukkit.getScheduler().runTaskTimer(plugin, t -> {
+                if (!p.isOnline()) t.cancel();
+                else task.run();
+            }, period, period);
+        }
+
+        @Override
+        public void runFor(Entity e, Runnable task) {
+            if (Bukkit.isPrimaryThread()) task.run();
+            else Bukkit.getScheduler().runTask(plugin, task);
+        }
+
+        @Override
+        public void teleport(Entity e, Location to, Runnable then) {
+            e.teleport(to);
+            if (then != null) then.run();
+        }
+
+        @Override public void cancelAll() { Bukkit.getScheduler().cancelTasks(plugin); }
+    }
+
+    /** Folia：リージョンごとのスケジューラを使う */
+    final class FoliaPlatform implements Platform {
+        private final Plugin plugin;
+
+        FoliaPlatform(Plugin plugin) { this.plugin = plugin; }
+
+        @Override public boolean regionized() { return true; }
+        // 実時間だとリージョンが遅れた時に表示だけ先に 0 になる（リスポーンで 0 に戻るので取り込み直す）
+        @Override public long currentTick(Player p) { return p.getTicksLived(); }
+
+        @Override
+        public void repeatGlobal(Runnable task, long period) {
+            Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, t -> task.run(), period, period);
+        }
+
+        @Override
+        public void repeatFor(Player p, Runnable task, long period) {
+            p.getScheduler().runAtFixedRate(plugin, t -> task.run(), null, period, period);
+        }
+
+        @Override
+        public void runFor(Entity e, Runnable task) {
+            if (Bukkit.isOwnedByCurrentRegion(e)) task.run();
+            else e.getScheduler().run(plugin, t -> task.run(), null);
+        }
+
+        @Override
+        public void teleport(Entity e, Location to, Runnable then) {
+            Location copy = to.clone(); // 呼び出し側は Location を使い回すので、非同期に渡す前に複製する
+            if (then == null) e.teleportAsync(copy);
+            else e.teleportAsync(copy).thenRun(() -> runFor(e, then));
+        }
+
+        @Override
+        public void cancelAll() {
+            Bukkit.getGlobalRegionScheduler().cancelTasks(plugin);
+            Bukkit.getAsyncScheduler().cancelTasks(plugin);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package net.example.openeffect;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * サーバーの MSPT / TPS とこのプラグイン自身の処理時間から、表示の間引き段階を決める。
+ * 重い間は degradeHold ごとに1段ずつ下げ、軽い状態が recoverHold 続いたら1段ずつ戻す
+ * （下げる閾値と戻す閾値を分けてあるので、境界でばたつかない）。
+ * 段階は {@link #level()} を各所が読むだけで、切り替えの処理は持たない。
+ */
+final class QosController {
+
+    static final int NORMAL = 0;
+    /** 定期確認を 1/4 に、残り時間の更新を2秒ごとに */
+    static final int SLOW_REFRESH = 1;
+    /** ＋移動での追従をやめる（定期確認の時だけ合わせる） */
+    static final int NO_MOVE = 2;
+    /** ＋残り時間を出さない（効果名とレベルだけ） */
+    static final int NO_TIMERS = 3;
+    /** ＋近くに viewer がいないターゲットの表示を止める */
+    static final int PAUSE_DISTANT = 4;
+
+    private static final String[] NAMES = {"normal", "slow-refresh", "no-move", "no-timers", "pause-distant"};
+
+    private final Stats stats;
+    private final Logger log;
+    private final boolean enabled;
+    private final int maxLevel;
+    private final double degradeMspt, recoverMspt, minTps, recoverTps, selfBudgetMs;
+    private final long degradeHoldMs, recoverHoldMs;
+    private final int pauseChunks;
+    private boolean serverMetrics;
+    private IntConsumer onChange = l -> {};
+
+    private volatile int level;
+    private long lastSelfNanos;
+    private long lastChange, healthySince;
+    // 直近の評価値（stats 表示用）
+    private double lastMspt = Double.NaN, lastTps = Double.NaN, lastSelfMs;
+
+    QosController(Stats stats, Logger log, ConfigurationSection cfg, boolean serverMetrics) {
+        this.stats = stats;
+        this.log = log;
+        this.enabled = cfg != null && cfg.getBoolean("enabled", true);
+        this.maxLevel = cfg == null ? 0 : Math.max(0, Math.min(PAUSE_DISTANT, cfg.getInt("maxLevel", PAUSE_DISTANT)));
+        this.degradeMspt = cfg == null ? 45 : cfg.getDouble("degradeMspt", 45.0);
+        this.recoverMspt = cfg == null ? 35 : cfg.getDouble("recoverMspt", 35.0);
+        this.minTps = cfg == null ? 18 : cfg.getDouble("minTps", 18.0);
+        this.recoverTps = cfg == null ? 19.5 : cfg.getDouble("recoverTps", 19.5);
+        this.selfBudgetMs = cfg == null ? 2 : cfg.getDouble("selfBudgetMs", 2.0);
+        this.degradeHoldMs = (cfg == null ? 3 : cfg.getLong("degradeHoldSeconds", 3)) * 1000L;
+        this.recoverHoldMs = (cfg == null ? 15 : cfg.getLong("recoverHoldSeconds", 15)) * 1000L;
+        this.pauseChunks = enabled && maxLevel >= PAUSE_DISTANT
+                ? Math.max(1, (int) Math.ceil((cfg == null ? 16 : cfg.getDouble("pauseRadius", 16)) / 16.0)) : 0;
+        this.serverMetrics = serverMetrics;
+        this.lastSelfNanos = selfNanos();
+    }
+
+    boolean enabled() { return enabled && maxLevel > 0; }
+    int level() { return level; }
+
+    /** 定期確認の間隔の倍率 */
+    int refreshScale() { return level >= SLOW_REFRESH ? 4 : 1; }
+    /** 残り時間の表示を何 tick 刻みで更新するか（0 なら終了時だけ） */
+    int wakeStep() { return level >= NO_TIMERS ? 0 : level >= SLOW_REFRESH ? 40 : 20; }
+    boolean moveUpdates() { return level < NO_MOVE; }
+    boolean timers() { return level < NO_TIMERS; }
+    /** 表示を止める距離（チャンク）。この段階でなければ 0 */
+    int pauseChunks() { return level >= PAUSE_DISTANT ? pauseChunks : 0; }
+    /** PAUSE_DISTANT になりうるか（viewer の位置索引を保つ必要があるか） */
+    boolean mayPause() { return pauseChunks > 0; }
+
+    /** 段階が変わった時に、変わる前の段階を渡して呼ばれる */
+    void onChange(IntConsumer listener) {
+        this.onChange = listener;
+    }
+
+    /** 定期的に（1秒ごと）呼ぶ。intervalTicks は前回からの tick 数 */
+    void evaluate(long intervalTicks) {
+        long self = selfNanos();
+        lastSelfMs = Math.max(0, self - lastSelfNanos) / 1e6 / Math.max(1, intervalTicks);
+        lastSelfNanos = self;
+        if (serverMetrics) {
+            try {
+                lastMspt = Bukkit.getAverageTickTime();
+                lastTps = Bukkit.getTPS()[0];
+            } catch (UnsupportedOperationException e) {
+                serverMetrics = false; // 使えないサーバーでは自分の処理時間だけで判断する
+                lastMspt = lastTps = Double.NaN;
+            }
+        }
+
+        // NaN（取れない値）との比較は常に false なので、その指標は判断に使われない
+        boolean overloaded = lastMspt > degradeMspt || lastTps < minTps || lastSelfMs > selfBudgetMs;
+        boolean healthy = !(lastMspt > recoverMspt) && !(lastTps < recoverTps) && lastSelfMs <= selfBudgetMs / 2;
+        long now = System.currentTimeMillis();
+        if (overloaded) {
+            healthySince = 0;
+            if (level < maxLevel && now - lastChange >= degradeHoldMs) set(level + 1, now);
+        } else if (healthy && level > NORMAL) {
+            if (healthySince == 0) healthySince = now;
+            if (now - healthySince >= recoverHoldMs && now - lastChange >= recoverHoldMs) {
+                set(level - 1, now);
+                healthySince = now;
+            }
+        } else {
+            healthySince = 0;
+        }
+    }
+
+    /** /openeffect stats 用 */
+    String describe() {
+        if (!enabled()) return "QoS: 無効";
+        return String.format("QoS: level %d (%s) mspt=%.1f tps=%.1f self=%.2fms/tick",
+                level, NAMES[level], lastMspt, lastTps, lastSelfMs);
+    }
+
+    private void set(int next, long now) {
+        int prev = level;
+        level = next;
+        lastChange = now;
+        String why = String.format("mspt=%.1f tps=%.1f self=%.2fms", lastMspt, lastTps, lastSelfMs);
+        if (next > prev) log.warning("負荷が高いため表示を間引きます: " + NAMES[prev] + " -> " + NAMES[next] + "（" + why + "）");
+        else log.info("負荷が下がったので表示を戻します: " + NAMES[prev] + " -> " + NAMES[next] + "（" + why + "）");
+        onChange.accept(prev);
+    }
+
+    private long selfNanos() {
+        return stats.tick.totalNanos() + stats.onMove.totalNanos();
+    }
+}
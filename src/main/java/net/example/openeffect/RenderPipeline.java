@@ -0,0 +1,128 @@
+package net.example.openeffect;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 表示内容の作り直しを3段に分ける。
+ * 1. main（Folia ならターゲットのリージョン）で効果と名前の不変スナップショットを取る（{@link #submit}）
+ * 2. ワーカーで行を組み立て、直前の内容と比べる
+ * 3. main で結果を受け取り、変わっていればエンティティに反映する（{@link #drain} / {@link #take}）
+ * 結果はターゲットごとに最新の1件だけ残す（古いスナップショットの結果は捨てる）。
+ * ワーカーが複数だと古いスナップショットが新しい結果の受け渡し後に終わることがあるので、
+ * 受け渡し済みの seq 以下の結果も捨てる。
+ */
+final class RenderPipeline {
+
+    /** ワーカーに渡す入力。base は比較元（その時点の lastLines。以後書き換えない）。timers が false なら残り時間を出さない */
+    private record Snapshot(UUID id, long seq, long now, String name,
+                            EffectStateCache.Entry[] effects, List<Component> base, boolean timers) {}
+
+    /** ワーカーの出力。changed は base と比べた結果 */
+    record Result(UUID id, long seq, List<Component> base, List<Component> lines, boolean changed) {}
+
+    private static final EffectStateCache.Entry[] NO_EFFECTS = new EffectStateCache.Entry[0];
+
+    private final EffectLineCache lines;
+    private final boolean showPlayerName;
+    private final ExecutorService workers;
+    private final Map<UUID, Result> ready = new ConcurrentHashMap<>();
+    // ターゲットごとに最後に受け渡した結果の seq
+    private final Map<UUID, Long> taken = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+
+    RenderPipeline(EffectLineCache lines, boolean showPlayerName, int threads) {
+        this.lines = lines;
+        this.showPlayerName = showPlayerName;
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "OpenEffect-render-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 1段目：スナップショットを取ってワーカーに渡す */
+    void submit(Player target, Collection<EffectStateCache.Entry> effects, long now, List<Component> base, boolean timers) {
+        Snapshot s = new Snapshot(target.getUniqueId(), seq.incrementAndGet(), now,
+                showPlayerName ? target.getName() : null, effects.toArray(NO_EFFECTS), base, timers);
+        try {
+            workers.execute(() -> complete(s));
+        } catch (RejectedExecutionException ignored) {
+            // 停止中
+        }
+    }
+
+    /** 3段目（Bukkit）：届いている結果をすべて渡す */
+    void drain(Consumer<Result> sink) {
+        for (UUID id : ready.keySet()) {
+            Result r = accept(ready.remove(id));
+            if (r != null) sink.accept(r);
+        }
+    }
+
+    /** 3段目（Folia）：このターゲットの結果だけ受け取る */
+    Result take(UUID id) {
+        return accept(ready.remove(id));
+    }
+
+    void discard(UUID id) {
+        ready.remove(id);
+        taken.remove(id);
+    }
+
+    void clear() {
+        ready.clear();
+        taken.clear();
+    }
+
+    void close() {
+        workers.shutdownNow();
+        clear();
+    }
+
+    /** 受け渡し済みより古い結果なら null（そのターゲットのスレッドからだけ呼ぶ） */
+    private Result accept(Result r) {
+        if (r == null || isStale(r.id(), r.seq())) return null;
+        taken.put(r.id(), r.seq());
+        return r;
+    }
+
+    private boolean isStale(UUID id, long seq) {
+        Long last = taken.get(id);
+        return last != null && seq <= last;
+    }
+
+    // ===== ワーカー側 =====
+    private void complete(Snapshot s) {
+        if (isStale(s.id(), s.seq())) return;
+        List<Component> out = build(s);
+        Result r = new Result(s.id(), s.seq(), s.base(), out, !out.equals(s.base()));
+        ready.merge(s.id(), r, (a, b) -> a.seq() > b.seq() ? a : b);
+    }
+
+    private List<Component> build(Snapshot s) {
+        List<Component> out = new ArrayList<>(s.effects().length + 1);
+        if (s.name() != null) out.add(Component.text(s.name()));
+        if (s.effects().length == 0) {
+            out.add(lines.none());
+            return out;
+        }
+        for (EffectStateCache.Entry eff : s.effects()) {
+            int sec = eff.infinite() ? EffectLineCache.INFINITE
+                    : s.timers() ? eff.seconds(s.now()) : EffectLineCache.HIDDEN;
+            out.add(lines.line(eff.type, eff.amplifier, sec));
+        }
+        return out;
+        // ※ 行が多すぎてネームタグと被る場合は config の box.topUp / box.step を調整
+    }
+}
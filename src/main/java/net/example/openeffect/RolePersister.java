@@ -0,0 +1,93 @@
+package net.example.openeffect;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 書き込みの遅延・集約（write-behind）。
+ * 変更時は dirty を立てるだけで（Folia では各リージョンから）、定期的にスナップショット（中身の写し）を取り、
+ * 文字列への変換とファイルへの書き出しは専用スレッドで一時ファイル→アトミック rename で行う。
+ * 同期書き込みは {@link #close()}（onDisable）のみ。
+ */
+final class RolePersister<T> {
+
+    private final Path file;
+    private final Supplier<T> snapshot; // 定期タスクのスレッドで呼ぶ（安い写しだけ。並行する変更とは保存側で排他する）
+    private final Function<T, String> render; // 保存スレッドで呼ぶ
+    private final Logger log;
+    private final Stats stats; // save（変換＋書き出しの時間）と roleSave（回数）
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OpenEffect-save");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    RolePersister(Path file, Supplier<T> snapshot, Function<T, String> render, Logger log, Stats stats) {
+        this.file = file;
+        this.snapshot = snapshot;
+        this.render = render;
+        this.log = log;
+        this.stats = stats;
+    }
+
+    void markDirty() {
+        dirty.set(true);
+    }
+
+    /** 定期タスクから。変更があればスナップショットを取って非同期で書く（取った後の変更は次回） */
+    void flushAsync() {
+        if (!dirty.getAndSet(false)) return;
+        T data = snapshot.get();
+        stats.saves.inc();
+        io.execute(() -> save(data));
+    }
+
+    /** 保留中の書き込みを待ってから、最新の内容を同期で書く */
+    void close() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(10, TimeUnit.SECONDS))
+                log.warning("保存スレッドの終了待ちがタイムアウトしました");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dirty.getAndSet(false)) {
+            stats.saves.inc();
+            save(snapshot.get());
+        }
+    }
+
+    private void save(T data) {
+        long t0 = stats.save.start();
+        write(render.apply(data));
+        stats.save.stop(t0);
+    }
+
+    private void write(String data) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(tmp, data, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Could not save " + file, e);
+        }
+    }
+}
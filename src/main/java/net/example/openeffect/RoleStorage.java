@@ -0,0 +1,49 @@
+package net.example.openeffect;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * owners / members / enabled の保存先。
+ * 役割はプレイヤーごとのビットフラグ1つで持つ（1行＝1プレイヤー）。
+ * オンラインのプレイヤーはキャッシュから、それ以外は必要な時だけストレージから読む。
+ */
+interface RoleStorage {
+
+    int OWNER   = 1;
+    int MEMBER  = 2;
+    int ENABLED = 4; // /open effect on
+
+    /** 参加前に読み込んでキャッシュする（AsyncPlayerPreLoginEvent など非同期スレッドから呼ばれる） */
+    void load(UUID id);
+
+    /** 退出時にキャッシュから外す */
+    void evict(UUID id);
+
+    /** 現在のフラグ。キャッシュに無ければストレージから読む（読み終わるまで待つので、main では参加中のプレイヤーにだけ使う） */
+    int flags(UUID id);
+
+    /** フラグを立てる／下ろす。変化した時だけ保存し true を返す（{@link #flags} と同じく参加中のプレイヤー向け） */
+    boolean set(UUID id, int flag, boolean on);
+
+    /**
+     * フラグを fn で書き換える。読み込みから書き込みまでを1つの処理として行い、変更前のフラグで完了する。
+     * キャッシュに無いプレイヤー（オフラインの相手へのコマンド）でも呼び出し元のスレッドを待たせない。
+     */
+    CompletableFuture<Integer> update(UUID id, IntUnaryOperator fn);
+
+    /** flag を持つ全員（一覧表示用）。呼び出し元のスレッドでは読まない */
+    CompletableFuture<List<UUID>> list(int flag);
+
+    /** 定期タスクから（main スレッド）。溜まった変更を書き出す */
+    void flush();
+
+    /** 停止時。保留中の変更をすべて書いてから閉じる */
+    void close();
+
+    default boolean has(UUID id, int flag) {
+        return (flags(id) & flag) != 0;
+    }
+}
@@ -0,0 +1,268 @@
+package net.example.openeffect;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * プラグインフォルダ内の SQLite ファイルに 1プレイヤー1行（uuid, flags）で保存する。
+ * キャッシュするのは参加中のプレイヤーの行だけで、参加前に読み込み・退出時に破棄する。
+ * DB へのアクセスはすべて専用スレッドで順番に行い、書き込みは行単位の upsert を投げるだけで待たない。
+ * ドライバはサーバー同梱の sqlite-jdbc を使う。
+ */
+final class SqliteRoleStorage implements RoleStorage {
+
+    private final Connection conn;
+    private final Logger log;
+    private final Stats stats; // save（1行の書き込み時間）と roleSave（回数）
+    private final ExecutorService db = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OpenEffect-db");
+        t.setDaemon(true);
+        return t;
+    });
+    // 参加中のプレイヤーの行
+    private final Map<UUID, Integer> cache = new ConcurrentHashMap<>();
+
+    SqliteRoleStorage(Path file, FileConfiguration legacy, Logger log, Stats stats) throws SQLException {
+        this.log = log;
+        this.stats = stats;
+        boolean fresh = !Files.exists(file);
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("sqlite-jdbc が見つかりません", e);
+        }
+        conn = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA synchronous=NORMAL");
+            st.execute("CREATE TABLE IF NOT EXISTS roles (uuid TEXT PRIMARY KEY, flags INTEGER NOT NULL)");
+        }
+        if (fresh) migrate(legacy);
+    }
+
+    /** 初回作成時に config.yml のリストを取り込む */
+    private void migrate(FileConfiguration legacy) throws SQLException {
+        Map<UUID, Integer> rows = new HashMap<>();
+        for (UUID id : YamlRoleStorage.read(legacy, "owners"))  rows.merge(id, OWNER, (a, b) -> a | b);
+        for (UUID id : YamlRoleStorage.read(legacy, "members")) rows.merge(id, MEMBER, (a, b) -> a | b);
+        for (UUID id : YamlRoleStorage.read(legacy, "enabled")) rows.merge(id, ENABLED, (a, b) -> a | b);
+        if (rows.isEmpty()) return;
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT OR REPLACE INTO roles (uuid, flags) VALUES (?, ?)")) {
+            for (Map.Entry<UUID, Integer> e : rows.entrySet()) {
+                ps.setString(1, e.getKey().toString());
+                ps.setInt(2, e.getValue());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        log.info("config.yml から " + rows.size() + " 件の役割を取り込みました");
+    }
+
+    @Override
+    public void load(UUID id) {
+        // 読み込みとキャッシュへの登録を DB スレッドで続けて行う（先に積まれた書き込みの後に読み、間に他の書き込みが入らない）
+        call(() -> cache.putIfAbsent(id, read(id)), null);
+    }
+
+    @Override
+    public void evict(UUID id) {
+        // 積んである書き込みがキャッシュの値を書き終えてから外す
+        try {
+            db.execute(() -> cache.remove(id));
+        } catch (RejectedExecutionException e) {
+            cache.remove(id); // 停止中
+        }
+    }
+
+    @Override
+    public int flags(UUID id) {
+        Integer f = cache.get(id);
+        return f != null ? f : call(() -> read(id), 0);
+    }
+
+    @Override
+    public boolean set(UUID id, int flag, boolean on) {
+        IntUnaryOperator fn = f -> on ? (f | flag) : (f & ~flag);
+        int[] old = new int[1];
+        Integer now = cache.computeIfPresent(id, (k, v) -> {
+            old[0] = v;
+            return fn.applyAsInt(v);
+        });
+        if (now != null) {
+            if (now == old[0]) return false;
+            persist(id, now);
+            return true;
+        }
+        // キャッシュに無い行は DB スレッドで読み込みから書き込みまで行い、それを待つ
+        Integer prev = call(() -> apply(id, fn), null);
+        return prev != null && fn.applyAsInt(prev) != prev;
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(UUID id, IntUnaryOperator fn) {
+        int[] old = new int[1];
+        Integer now = cache.computeIfPresent(id, (k, v) -> {
+            old[0] = v;
+            return fn.applyAsInt(v);
+        });
+        if (now != null) {
+            if (now != old[0]) persist(id, now);
+            return CompletableFuture.completedFuture(old[0]);
+        }
+        // キャッシュに無い行は、読み込み・計算・書き込みをまとめて DB スレッドで行う
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        try {
+            db.execute(() -> {
+                try {
+                    result.complete(apply(id, fn));
+                } catch (SQLException | RuntimeException e) {
+                    log.log(Level.SEVERE, "Could not save roles of " + id, e);
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e); // 停止中
+        }
+        return result;
+    }
+
+    /**
+     * キャッシュの行の書き込みを DB スレッドに積む（待たない）。
+     * 書くのは実行時点のキャッシュの値なので、複数のリージョンからの変更が積まれた順と前後しても最新が残る。
+     */
+    private void persist(UUID id, int now) {
+        db.execute(() -> {
+            try {
+                Integer latest = cache.get(id);
+                write(id, latest != null ? latest : now);
+            } catch (SQLException e) {
+                log.log(Level.SEVERE, "Could not save roles of " + id, e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<UUID>> list(int flag) {
+        CompletableFuture<List<UUID>> result = new CompletableFuture<>();
+        try {
+            db.execute(() -> {
+                List<UUID> out = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement("SELECT uuid FROM roles WHERE (flags & ?) != 0")) {
+                    ps.setInt(1, flag);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) out.add(UUID.fromString(rs.getString(1)));
+                    }
+                    result.complete(out);
+                } catch (SQLException | RuntimeException e) {
+                    log.log(Level.SEVERE, "Roles database error", e);
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e); // 停止中
+        }
+        return result;
+    }
+
+    @Override
+    public void flush() {
+        // 書き込みは set() の時点で DB スレッドに積んでいる
+    }
+
+    @Override
+    public void close() {
+        db.shutdown();
+        try {
+            if (!db.awaitTermination(10, TimeUnit.SECONDS))
+                log.warning("DB スレッドの終了待ちがタイムアウトしました");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Could not close roles database", e);
+        }
+    }
+
+    // ===== DB スレッド上で実行 =====
+    /**
+     * 行を fn で書き換えて変更前の値を返す。
+     * 積まれている間に参加して読み込まれていればキャッシュの側を書き換える（load も DB スレッドなので、無ければこの後に読まれる）。
+     */
+    private int apply(UUID id, IntUnaryOperator fn) throws SQLException {
+        int[] old = new int[1];
+        Integer now = cache.computeIfPresent(id, (k, v) -> {
+            old[0] = v;
+            return fn.applyAsInt(v);
+        });
+        if (now != null) {
+            if (now != old[0]) write(id, now);
+            return old[0];
+        }
+        int prev = read(id);
+        int next = fn.applyAsInt(prev);
+        if (next != prev) write(id, next);
+        return prev;
+    }
+
+    private int read(UUID id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT flags FROM roles WHERE uuid = ?")) {
+            ps.setString(1, id.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void write(UUID id, int flags) throws SQLException {
+        stats.saves.inc();
+        long t0 = stats.save.start();
+        try {
+            if (flags == 0) {
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM roles WHERE uuid = ?")) {
+                    ps.setString(1, id.toString());
+                    ps.executeUpdate();
+                }
+                return;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO roles (uuid, flags) VALUES (?, ?) ON CONFLICT(uuid) DO UPDATE SET flags = excluded.flags")) {
+                ps.setString(1, id.toString());
+                ps.setInt(2, flags);
+                ps.executeUpdate();
+            }
+        } finally {
+            stats.save.stop(t0);
+        }
+    }
+
+    private interface SqlTask<T> {
+        T run() throws SQLException;
+    }
+
+    /** DB スレッドで実行して結果を待つ（先に積まれた書き込みの後に読むので整合する） */
+    private <T> T call(SqlTask<T> task, T fallback) {
+        try {
+            return db.submit(task::run).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException e) {
+            log.log(Level.SEVERE, "Roles database error", e.getCause());
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package net.example.openeffect;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 処理時間とエンティティ操作の回数を数える（/openeffect stats）。
+ * 処理時間は 2 の累乗マイクロ秒のバケットで持ち、p50 / p99 はバケットの上端で近似する。
+ * stats.jfr が true なら JFR にも出す（区間ごとの openeffect.Section と、1秒ごとの操作回数 openeffect.Churn）。
+ * どのスレッドから呼んでもよい。
+ */
+final class Stats {
+
+    /** 区間の処理時間 */
+    static final class Timer {
+        private static final int BUCKETS = 24; // 1µs .. 約8秒
+
+        final String name;
+        private final boolean jfr;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private Timer(String name, boolean jfr) {
+            this.name = name;
+            this.jfr = jfr;
+            for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+        }
+
+        long start() {
+            return System.nanoTime();
+        }
+
+        void stop(long start) {
+            long d = System.nanoTime() - start;
+            count.increment();
+            totalNanos.add(d);
+            maxNanos.accumulate(d);
+            long us = d / 1000;
+            int b = us <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(us));
+            buckets[b].increment();
+            if (jfr) SectionEvent.emit(name, d);
+        }
+
+        /** 累計の処理時間（reset で 0 に戻る） */
+        long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        /** 上位 q（0..1）の近似値（マイクロ秒） */
+        private long percentileMicros(long n, double q) {
+            long rank = (long) Math.ceil(n * q);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        String summary() {
+            long n = count.sum();
+            if (n == 0) return name + ": -";
+            return String.format("%s: n=%d avg=%.1fµs p50≤%dµs p99≤%dµs max=%.1fµs",
+                    name, n, totalNanos.sum() / 1000.0 / n,
+                    percentileMicros(n, 0.50), percentileMicros(n, 0.99), maxNanos.get() / 1000.0);
+        }
+
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (LongAdder b : buckets) b.reset();
+        }
+    }
+
+    /** 回数 */
+    static final class Counter {
+        final String name;
+        private final LongAdder total = new LongAdder();
+        private long lastPeriodic; // JFR の前回値（periodic フックからだけ触る）
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        void inc() {
+            total.increment();
+        }
+
+        void add(long n) {
+            total.add(n);
+        }
+
+        long get() {
+            return total.sum();
+        }
+
+        private long delta() {
+            long now = total.sum();
+            long d = now - lastPeriodic;
+            lastPeriodic = now;
+            return Math.max(0, d);
+        }
+
+        private void reset() {
+            total.reset();
+            lastPeriodic = 0;
+        }
+    }
+
+    private final List<Timer> timers = new ArrayList<>();
+    private final List<Counter> counters = new ArrayList<>();
+    private final boolean jfr;
+    private Runnable churnHook;
+    private long since = System.currentTimeMillis();
+
+    final Timer tick, updateOne, apply, onMove, save;
+    final Counter spawns, removes, teleports, renames, shows, hides, reclaimed, saves;
+
+    Stats(boolean jfr) {
+        this.jfr = jfr && jfrAvailable();
+        tick      = timer("tick");
+        updateOne = timer("updateOne");
+        apply     = timer("apply");
+        onMove    = timer("onMove");
+        save      = timer("save");
+        spawns    = counter("spawn");
+        removes   = counter("remove");
+        teleports = counter("teleport");
+        renames   = counter("rename");
+        shows     = counter("showEntity");
+        hides     = counter("hideEntity");
+        reclaimed = counter("reclaimed");
+        saves     = counter("roleSave");
+        if (this.jfr) {
+            churnHook = () -> {
+                ChurnEvent e = new ChurnEvent();
+                e.spawns = spawns.delta();
+                e.removes = removes.delta();
+                e.teleports = teleports.delta();
+                e.renames = renames.delta();
+                e.shows = shows.delta();
+                e.hides = hides.delta();
+                e.commit();
+            };
+            FlightRecorder.addPeriodicEvent(ChurnEvent.class, churnHook);
+        }
+    }
+
+    private Timer timer(String name) {
+        Timer t = new Timer(name, jfr);
+        timers.add(t);
+        return t;
+    }
+
+    private Counter counter(String name) {
+        Counter c = new Counter(name);
+        counters.add(c);
+        return c;
+    }
+
+    /** /openeffect stats の出力 */
+    List<String> report() {
+        List<String> out = new ArrayList<>();
+        out.add(String.format("計測 %d 秒間%s", (System.currentTimeMillis() - since) / 1000, jfr ? "（JFR 有効）" : ""));
+        for (Timer t : timers) out.add(t.summary());
+        StringBuilder sb = new StringBuilder();
+        for (Counter c : counters) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(c.name).append('=').append(c.get());
+        }
+        out.add(sb.toString());
+        return out;
+    }
+
+    void reset() {
+        for (Timer t : timers) t.reset();
+        for (Counter c : counters) c.reset();
+        since = System.currentTimeMillis();
+    }
+
+    void close() {
+        if (churnHook != null) FlightRecorder.removePeriodicEvent(churnHook);
+        churnHook = null;
+    }
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    // ===== JFR =====
+    @Name("openeffect.Section")
+    @Label("OpenEffect Section")
+    @Category("OpenEffect")
+    @Description("区間ごとの処理時間")
+    @StackTrace(false)
+    static final class SectionEvent extends Event {
+        @Label("Section")
+        String section;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long duration;
+
+        static void emit(String section, long nanos) {
+            SectionEvent e = new SectionEvent();
+            if (!e.isEnabled()) return;
+            e.section = section;
+            e.duration = nanos;
+            e.commit();
+        }
+    }
+
+    @Name("openeffect.Churn")
+    @Label("OpenEffect Entity Churn")
+    @Category("OpenEffect")
+    @Description("直近の周期あたりの表示エンティティ操作回数")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class ChurnEvent extends Event {
+        @Label("Spawns") long spawns;
+        @Label("Removes") long removes;
+        @Label("Teleports") long teleports;
+        @Label("Renames") long renames;
+        @Label("Shows") long shows;
+        @Label("Hides") long hides;
+    }
+}
@@ -0,0 +1,203 @@
+package net.example.openeffect;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import org.bukkit.Color;
+import org.bukkit.Location;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Display;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.TextDisplay;
+import org.bukkit.util.Transformation;
+import org.joml.Vector3f;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ターゲットごとに複数行 TextDisplay 1体で描画する。
+ * 行数が変わってもエンティティは作り直さず、テキストの差し替えだけで済む。
+ * 使わなくなった TextDisplay（退出したターゲットの分）はプールに戻して使い回す。
+ * display.attach: passenger ではターゲットに騎乗させ、位置追従はクライアント任せにする
+ * （高さは transformation の translation で付ける。translation は billboard の回転の後にかかるので、
+ * 騎乗時は縦軸だけ回る VERTICAL に固定する）。
+ */
+class TextDisplayBackend implements DisplayBackend {
+
+    private final DisplayManager dm;
+    private final EntityPool<TextDisplay> pool;
+
+    // config
+    private final Display.Billboard billboard;
+    private final boolean defaultBackground;
+    private final Color backgroundColor; // null なら既定色
+    private final boolean shadow;
+    private final boolean seeThrough;
+    private final boolean passenger;
+
+    TextDisplayBackend(DisplayManager dm, ConfigurationSection cfg, int poolSize) {
+        this.dm = dm;
+        this.pool = new EntityPool<>(poolSize, dm.stats().removes);
+        Display.Billboard bb = parseBillboard(cfg == null ? null : cfg.getString("billboard"));
+        this.defaultBackground = cfg == null || cfg.getBoolean("background", true);
+        this.backgroundColor = parseColor(cfg == null ? null : cfg.getString("backgroundColor"));
+        this.shadow = cfg != null && cfg.getBoolean("shadow", false);
+        this.seeThrough = cfg != null && cfg.getBoolean("seeThrough", false);
+        this.passenger = cfg != null && "passenger".equalsIgnoreCase(cfg.getString("attach", "teleport"));
+        if (passenger && dm.hasHorizontalOffset())
+            dm.logger().warning("display.attach: passenger では offsetRight / offsetForward は無視されます");
+        // CENTER / HORIZONTAL だと持ち上げた分が viewer の視線の上下で振れる
+        if (passenger && (bb == Display.Billboard.CENTER || bb == Display.Billboard.HORIZONTAL)) {
+            dm.logger().warning("display.attach: passenger では billboard: " + bb + " は使えません。VERTICAL で動作します");
+            bb = Display.Billboard.VERTICAL;
+        }
+        this.billboard = bb;
+    }
+
+    @Override
+    public boolean followsTarget() {
+        return passenger;
+    }
+
+    @Override
+    public List<Entity> render(Player target, List<Entity> ents, List<Component> prev, List<Component> lines) {
+        Component text = Component.join(JoinConfiguration.newlines(), lines);
+        TextDisplay td = current(ents);
+        if (td != null) {
+            if (!lines.equals(prev)) {
+                td.text(text);
+                dm.stats().renames.inc();
+            }
+            // teleport 方式の位置は続く follow で合わせる
+            if (passenger && lines.size() != prev.size()) setLift(td, target, lines.size());
+            return Collections.emptyList();
+        }
+        release(ents);
+        td = acquire(target, lines.size(), text);
+        ents.add(td);
+        return Collections.singletonList(td);
+    }
+
+    @Override
+    public void follow(Player target, List<Entity> ents) {
+        TextDisplay td = current(ents);
+        if (td == null) return;
+        if (!passenger) {
+            dm.teleport(td, anchor(target, dm.lineCount(target.getUniqueId())), null);
+            return;
+        }
+        // 騎乗中なら何もしない。テレポート・ワールド移動で降ろされた時だけ乗せ直す
+        if (target.equals(td.getVehicle())) return;
+        if (td.getWorld() != target.getWorld()) {
+            release(ents); // 次の ensureTarget で作り直す
+            return;
+        }
+        dm.teleport(td, target.getLocation(), () -> target.addPassenger(td));
+    }
+
+    @Override
+    public void release(List<Entity> ents) {
+        for (Entity e : ents) if (e instanceof TextDisplay) park((TextDisplay) e);
+        ents.clear();
+    }
+
+    private void park(TextDisplay td) {
+        if (td.isDead()) return;
+        td.leaveVehicle();
+        td.text(Component.empty()); // 空テキストは描画されない
+        pool.release(td);
+    }
+
+    @Override
+    public void clear() {
+        pool.clear();
+    }
+
+    @Override
+    public boolean adopt(Entity e) {
+        if (!(e instanceof TextDisplay)) return false;
+        e.setVisibleByDefault(false);
+        park((TextDisplay) e);
+        return true;
+    }
+
+    private TextDisplay acquire(Player target, int lineCount, Component text) {
+        TextDisplay td = pool.acquire(target.getWorld());
+        if (td == null) return spawn(target, lineCount, text);
+        td.text(text);
+        dm.stats().renames.inc();
+        if (td.getBillboard() != billboard) td.setBillboard(billboard); // 引き取った前回の残りは設定が違うことがある
+        if (passenger) {
+            setLift(td, target, lineCount);
+            dm.teleport(td, target.getLocation(), () -> target.addPassenger(td));
+        } else {
+            dm.teleport(td, anchor(target, lineCount), null);
+        }
+        return td;
+    }
+
+    private TextDisplay current(List<Entity> ents) {
+        if (ents.size() != 1) return null;
+        Entity e = ents.get(0);
+        return (e instanceof TextDisplay && !e.isDead()) ? (TextDisplay) e : null;
+    }
+
+    /** TextDisplay は下端が基準点なので、最下行の位置に置くと上端が box.topUp に揃う */
+    private Location anchor(Player target, int lineCount) {
+        return dm.linePos(target, Math.max(0, lineCount - 1));
+    }
+
+    /**
+     * 騎乗時の高さ。乗る位置はターゲットの頭頂なので、目線基準の anchor との差を translation で補う。
+     */
+    private void setLift(TextDisplay td, Player target, int lineCount) {
+        float y = (float) (target.getEyeHeight() + dm.topUp() - target.getHeight()
+                - dm.stepDown() * Math.max(0, lineCount - 1));
+        Transformation t = td.getTransformation();
+        if (t.getTranslation().y == y) return;
+        td.setTransformation(new Transformation(new Vector3f(0, y, 0),
+                t.getLeftRotation(), t.getScale(), t.getRightRotation()));
+    }
+
+    private TextDisplay spawn(Player target, int lineCount, Component text) {
+        Location at = passenger ? target.getLocation() : anchor(target, lineCount);
+        dm.stats().spawns.inc();
+        TextDisplay td = target.getWorld().spawn(at, TextDisplay.class, ent -> {
+            ent.text(text);
+            ent.setBillboard(billboard);
+            ent.setShadowed(shadow);
+            ent.setSeeThrough(seeThrough);
+            if (backgroundColor != null) ent.setBackgroundColor(backgroundColor);
+            else ent.setDefaultBackground(defaultBackground);
+            ent.setSilent(true);
+            ent.setGravity(false);
+            ent.setVisibleByDefault(false); // viewer単位
+            dm.tag(ent);
+        });
+        if (passenger) {
+            setLift(td, target, lineCount);
+            target.addPassenger(td);
+        }
+        return td;
+    }
+
+    private static Display.Billboard parseBillboard(String s) {
+        if (s == null || s.isEmpty()) return Display.Billboard.CENTER;
+        try {
+            return Display.Billboard.valueOf(s.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            return Display.Billboard.CENTER;
+        }
+    }
+
+    /** "40000000" のような ARGB 16進。空・不正なら null */
+    private static Color parseColor(String s) {
+        if (s == null || s.isEmpty()) return null;
+        try {
+            return Color.fromARGB((int) Long.parseLong(s.startsWith("#") ? s.substring(1) : s, 16));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
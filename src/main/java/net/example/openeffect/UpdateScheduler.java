@@ -0,0 +1,79 @@
+package net.example.openeffect;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * tick ごとの処理時間に上限（予算）を設けた更新キュー。
+ * 仕事は優先度の高い順に「内容の作り直し」→「移動の追従」→「定期確認」の3段で、
+ * 予算内に終わらなかった分は次の tick に持ち越す。
+ * 定期確認はターゲットを UUID でシャードに分け、全体更新のたびに1シャードずつ順番に積む。
+ */
+final class UpdateScheduler {
+
+    private final LinkedHashSet<UUID> content  = new LinkedHashSet<>();
+    private final LinkedHashSet<UUID> position = new LinkedHashSet<>();
+    private final LinkedHashSet<UUID> refresh  = new LinkedHashSet<>();
+    private final long budgetNanos;
+    private final int shards;
+    private int shardCursor;
+
+    UpdateScheduler(long budgetMicros, int shards) {
+        this.budgetNanos = Math.max(1, budgetMicros) * 1000L;
+        this.shards = Math.max(1, shards);
+    }
+
+    void markContent(UUID id)  { content.add(id); }
+    void markPosition(UUID id) { position.add(id); }
+    boolean isPositionQueued(UUID id) { return position.contains(id); }
+
+    void remove(UUID id) {
+        content.remove(id);
+        position.remove(id);
+        refresh.remove(id);
+    }
+
+    void clear() {
+        content.clear();
+        position.clear();
+        refresh.clear();
+    }
+
+    /** 次のシャードに属するターゲットを定期確認キューに積む */
+    void enqueueShard(Iterable<UUID> targets) {
+        int shard = shardCursor;
+        shardCursor = (shardCursor + 1) % shards;
+        for (UUID id : targets) if (Math.floorMod(id.hashCode(), shards) == shard) refresh.add(id);
+    }
+
+    /**
+     * 予算内で仕事をこなす。最低1件は必ず進める。
+     * 内容の作り直しは位置を合わせないので、同じターゲットが下位のキューにいてもそのまま残す。
+     */
+    void run(Consumer<UUID> doContent, Consumer<UUID> doPosition, Consumer<UUID> doRefresh) {
+        long deadline = System.nanoTime() + budgetNanos;
+        while (true) {
+            UUID id;
+            if ((id = poll(content)) != null) {
+                doContent.accept(id);
+            } else if ((id = poll(position)) != null) {
+                doPosition.accept(id);
+            } else if ((id = poll(refresh)) != null) {
+                doRefresh.accept(id);
+            } else {
+                return;
+            }
+            if (System.nanoTime() >= deadline) return; // 残りは次の tick へ
+        }
+    }
+
+    private static UUID poll(LinkedHashSet<UUID> q) {
+        Iterator<UUID> it = q.iterator();
+        if (!it.hasNext()) return null;
+        UUID id = it.next();
+        it.remove();
+        return id;
+    }
+}
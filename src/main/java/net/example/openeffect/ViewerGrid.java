@@ -0,0 +1,91 @@
+package net.example.openeffect;
+
+import org.bukkit.Location;
+
+import java.util.*;
+
+/**
+ * 表示を見られる viewer の位置をワールド×チャンク単位で引ける索引。
+ * 「このターゲットの近くに見る人がいるか」をチャンク数個の参照で判定するために使う。
+ * 位置はチャンクが変わった時だけ更新する。Folia では複数リージョンから触るので排他する。
+ * hud 方式では、viewer の近くにいる相手を探すための全プレイヤーの索引にも使う。
+ */
+final class ViewerGrid {
+
+    private static final class Cell {
+        final UUID world;
+        final long key;
+
+        Cell(UUID world, long key) {
+            this.world = world;
+            this.key = key;
+        }
+    }
+
+    // world -> chunkKey -> viewer
+    private final Map<UUID, Map<Long, Set<UUID>>> cells = new HashMap<>();
+    private final Map<UUID, Cell> where = new HashMap<>();
+
+    static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xffffffffL);
+    }
+
+    /** viewer の現在地を反映（チャンクが変わっていなければ何もしない） */
+    synchronized void update(UUID viewer, Location at) {
+        UUID world = at.getWorld().getUID();
+        long key = key(at.getBlockX() >> 4, at.getBlockZ() >> 4);
+        Cell cur = where.get(viewer);
+        if (cur != null && cur.key == key && cur.world.equals(world)) return;
+        if (cur != null) leave(viewer, cur);
+        where.put(viewer, new Cell(world, key));
+        cells.computeIfAbsent(world, k -> new HashMap<>()).computeIfAbsent(key, k -> new HashSet<>()).add(viewer);
+    }
+
+    synchronized void remove(UUID viewer) {
+        Cell cur = where.remove(viewer);
+        if (cur != null) leave(viewer, cur);
+    }
+
+    synchronized boolean contains(UUID viewer) {
+        return where.containsKey(viewer);
+    }
+
+    /** at から半径 r チャンク以内に exclude 以外の viewer がいるか */
+    synchronized boolean anyNear(Location at, int r, UUID exclude) {
+        Map<Long, Set<UUID>> world = cells.get(at.getWorld().getUID());
+        if (world == null) return false;
+        int cx = at.getBlockX() >> 4, cz = at.getBlockZ() >> 4;
+        for (int x = cx - r; x <= cx + r; x++) {
+            for (int z = cz - r; z <= cz + r; z++) {
+                Set<UUID> s = world.get(key(x, z));
+                if (s == null) continue;
+                if (s.size() > 1 || !s.contains(exclude)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** at から半径 r チャンク以内の exclude 以外を out に足す */
+    synchronized void collectNear(Location at, int r, UUID exclude, Collection<UUID> out) {
+        Map<Long, Set<UUID>> world = cells.get(at.getWorld().getUID());
+        if (world == null) return;
+        int cx = at.getBlockX() >> 4, cz = at.getBlockZ() >> 4;
+        for (int x = cx - r; x <= cx + r; x++) {
+            for (int z = cz - r; z <= cz + r; z++) {
+                Set<UUID> s = world.get(key(x, z));
+                if (s == null) continue;
+                for (UUID id : s) if (!id.equals(exclude)) out.add(id);
+            }
+        }
+    }
+
+    private void leave(UUID viewer, Cell c) {
+        Map<Long, Set<UUID>> world = cells.get(c.world);
+        if (world == null) return;
+        Set<UUID> s = world.get(c.key);
+        if (s == null) return;
+        s.remove(viewer);
+        if (s.isEmpty()) world.remove(c.key);
+        if (world.isEmpty()) cells.remove(c.world);
+    }
+}
@@ -0,0 +1,99 @@
+package net.example.openeffect;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * viewer × ターゲットの可視性を差分で管理する。
+ * 表示エンティティは visibleByDefault=false なので「見せる」側だけを送ればよく、
+ * 送るのは viewer の可否が変わった時とエンティティの持ち主（ターゲット）が変わった時だけ。
+ * 「自分自身の行は常に非表示」もここで保証する。
+ * show/hide は viewer の所属スレッドで送る（Bukkit ではその場で実行される）。
+ */
+final class VisibilityIndex {
+
+    private final Plugin plugin;
+    private final Platform platform;
+    private final Stats stats;
+    // 表示 ON で権限もある viewer
+    private final Set<UUID> viewers = ConcurrentHashMap.newKeySet();
+    // エンティティ -> 現在「見せている」ターゲット（プールで待機中のものも含む）。
+    // 削除済みエンティティは GC で消える
+    private final Map<Entity, UUID> owner = Collections.synchronizedMap(new WeakHashMap<>());
+
+    VisibilityIndex(Plugin plugin, Platform platform, Stats stats) {
+        this.plugin = plugin;
+        this.platform = platform;
+        this.stats = stats;
+    }
+
+    boolean isViewer(UUID id) {
+        return viewers.contains(id);
+    }
+
+    /** 今の実行で割り当てたことのあるエンティティか（プールで待機中のものも含む） */
+    boolean isTracked(Entity ent) {
+        return owner.containsKey(ent);
+    }
+
+    /** viewer の可否を反映。変化した時だけ全ターゲット分の show/hide を送る */
+    void setViewer(Player viewer, boolean canSee) {
+        UUID vid = viewer.getUniqueId();
+        if (canSee ? !viewers.add(vid) : !viewers.remove(vid)) return;
+        List<Entity> targets = new ArrayList<>();
+        synchronized (owner) {
+            for (Map.Entry<Entity, UUID> e : owner.entrySet())
+                if (!vid.equals(e.getValue())) targets.add(e.getKey());
+        }
+        platform.runFor(viewer, () -> {
+            for (Entity ent : targets) {
+                if (ent.isDead()) continue;
+                if (canSee) viewer.showEntity(plugin, ent);
+                else viewer.hideEntity(plugin, ent);
+                (canSee ? stats.shows : stats.hides).inc();
+            }
+        });
+    }
+
+    /** 退出時。クライアント側の状態は接続と一緒に消えるので送信は不要 */
+    void removeViewer(UUID id) {
+        viewers.remove(id);
+    }
+
+    /** エンティティが target の表示になった（新規生成・プールからの再利用） */
+    void assign(Entity ent, UUID target) {
+        UUID prev = owner.put(ent, target);
+        if (prev == null) {
+            // 新規：誰にも見えていないので、target 以外の viewer に見せる
+            for (UUID vid : viewers) {
+                if (vid.equals(target)) continue;
+                Player v = Bukkit.getPlayer(vid);
+                if (v != null) show(v, ent, true);
+            }
+            return;
+        }
+        if (prev.equals(target)) return;
+        // 別ターゲットからの再利用：前の持ち主には見せ、新しい持ち主からは隠す
+        if (viewers.contains(prev)) {
+            Player p = Bukkit.getPlayer(prev);
+            if (p != null) show(p, ent, true);
+        }
+        if (viewers.contains(target)) {
+            Player t = Bukkit.getPlayer(target);
+            if (t != null) show(t, ent, false);
+        }
+    }
+
+    private void show(Player viewer, Entity ent, boolean show) {
+        platform.runFor(viewer, () -> {
+            if (show) viewer.showEntity(plugin, ent);
+            else viewer.hideEntity(plugin, ent);
+            (show ? stats.shows : stats.hides).inc();
+        });
+    }
+}
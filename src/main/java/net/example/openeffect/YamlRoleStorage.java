@@ -0,0 +1,125 @@
+package net.example.openeffect;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * 従来どおり config.yml の enabled / owners / members に UUID 文字列のリストで保存する。
+ * 全件をメモリに持ち、書き込みは {@link RolePersister} でまとめて非同期に行う。
+ * Folia では読み書きが各リージョンから来るので、読むのは並行セットからそのまま、
+ * 書き換えとスナップショットは this で排他する（複数フラグの書き換えが途中で保存されない）。
+ * スナップショットは3つの集合を配列に写すだけで、YAML にするのは保存スレッドで、
+ * 起動時の config.yml を写した別の {@link YamlConfiguration} に対して行う（getConfig() には触らない）。
+ */
+final class YamlRoleStorage implements RoleStorage {
+
+    private final FileConfiguration cfg;
+    private final Set<UUID> enabled = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> owners  = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> members = ConcurrentHashMap.newKeySet();
+    private final YamlConfiguration out = new YamlConfiguration(); // 保存スレッドだけが触る
+    private final RolePersister<UUID[][]> persister;
+
+    YamlRoleStorage(JavaPlugin plugin, Stats stats) {
+        this.cfg = plugin.getConfig();
+        enabled.addAll(read("enabled"));
+        owners.addAll(read("owners"));
+        members.addAll(read("members"));
+        try {
+            out.loadFromString(cfg.saveToString()); // ロール以外の設定とコメントはそのまま書き戻す
+        } catch (InvalidConfigurationException e) {
+            throw new IllegalStateException("config.yml", e);
+        }
+        this.persister = new RolePersister<>(plugin.getDataFolder().toPath().resolve("config.yml"),
+                this::snapshot, this::render, plugin.getLogger(), stats);
+    }
+
+    /** 他のストレージへの移行用 */
+    static Set<UUID> read(FileConfiguration cfg, String key) {
+        return cfg.getStringList(key).stream().map(UUID::fromString).collect(Collectors.toSet());
+    }
+
+    private Set<UUID> read(String key) {
+        return read(cfg, key);
+    }
+
+    @Override public void load(UUID id) {}
+    @Override public void evict(UUID id) {}
+
+    @Override
+    public int flags(UUID id) {
+        int f = 0;
+        if (owners.contains(id))  f |= OWNER;
+        if (members.contains(id)) f |= MEMBER;
+        if (enabled.contains(id)) f |= ENABLED;
+        return f;
+    }
+
+    @Override
+    public synchronized boolean set(UUID id, int flag, boolean on) {
+        Set<UUID> s = setOf(flag);
+        boolean changed = on ? s.add(id) : s.remove(id);
+        if (changed) persister.markDirty();
+        return changed;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> update(UUID id, IntUnaryOperator fn) {
+        int old = flags(id);
+        int now = fn.applyAsInt(old);
+        for (int flag : new int[]{OWNER, MEMBER, ENABLED})
+            if (((old ^ now) & flag) != 0) set(id, flag, (now & flag) != 0);
+        return CompletableFuture.completedFuture(old);
+    }
+
+    @Override
+    public CompletableFuture<List<UUID>> list(int flag) {
+        return CompletableFuture.completedFuture(new ArrayList<>(setOf(flag))); // メモリ上の写しだけ
+    }
+
+    @Override
+    public void flush() {
+        persister.flushAsync();
+    }
+
+    @Override
+    public void close() {
+        persister.close();
+    }
+
+    private Set<UUID> setOf(int flag) {
+        switch (flag) {
+            case OWNER:   return owners;
+            case MEMBER:  return members;
+            case ENABLED: return enabled;
+            default: throw new IllegalArgumentException("flag " + flag);
+        }
+    }
+
+    /** 定期タスクのスレッドで。enabled / owners / members の順に写す */
+    private synchronized UUID[][] snapshot() {
+        return new UUID[][]{enabled.toArray(new UUID[0]), owners.toArray(new UUID[0]), members.toArray(new UUID[0])};
+    }
+
+    /** 保存スレッドで */
+    private String render(UUID[][] s) {
+        out.set("enabled", strings(s[0]));
+        out.set("owners", strings(s[1]));
+        out.set("members", strings(s[2]));
+        return out.saveToString();
+    }
+
+    private static List<String> strings(UUID[] ids) {
+        List<String> l = new ArrayList<>(ids.length);
+        for (UUID id : ids) l.add(id.toString());
+        return l;
+    }
+}
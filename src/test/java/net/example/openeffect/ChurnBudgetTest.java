@@ -0,0 +1,150 @@
+package net.example.openeffect;
+
+import org.bukkit.Location;
+import org.bukkit.potion.PotionEffectType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 大勢のプレイヤーで表示エンティティの操作回数が予算内に収まるかを、表示方式ごとに確かめる。
+ * 効果の変化・残り時間の減少は内容の差し替えだけで済み、止まっているターゲットはテレポートしない。
+ * spawn / remove / 可視性の送信は参加・退出・表示の ON/OFF と、ArmorStand の行数の増減の時にしか起きないこと
+ * （毎秒全員分を作り直す・内容の更新のたびに位置を合わせ直すような後退を落とす）。
+ */
+class ChurnBudgetTest {
+
+    private static final int PLAYERS = 200;
+    private static final int TICKS = 200;
+    private static final double AREA = 40; // culling.radius（48）の内側に全員を置く
+    private static final int SAVE_INTERVAL = 100;
+    private static final List<PotionEffectType> TYPES = List.of(
+            PotionEffectType.SPEED, PotionEffectType.REGENERATION, PotionEffectType.STRENGTH,
+            PotionEffectType.NIGHT_VISION, PotionEffectType.JUMP_BOOST);
+    /** 1ターゲットの行数：最初は2行（TYPES から1つ＋HASTE）、最大で TYPES 全部＋HASTE */
+    private static final int LINES = 2, MAX_LINES = TYPES.size() + 1;
+
+    private final Random rnd = new Random(42);
+    private LoadSimulation sim;
+
+    @AfterEach
+    void tearDown() {
+        if (sim != null) sim.close();
+    }
+
+    private LoadSimulation start(LoadSimulation.Backend backend) {
+        sim = new LoadSimulation(backend, Map.<String, Object>of("saveIntervalTicks", SAVE_INTERVAL));
+        sim.populate(PLAYERS, AREA);
+        for (PlayerMock p : sim.players) {
+            // 終了は run の後（settle＋TICKS より長い）。秒の境界がずれるよう長さはばらす
+            sim.give(p, TYPES.get(rnd.nextInt(TYPES.size())), rnd.nextInt(3), 1200 + rnd.nextInt(2400));
+            sim.give(p, PotionEffectType.HASTE, 0, 6000 + rnd.nextInt(20));
+        }
+        sim.settle(SAVE_INTERVAL + 20); // 参加・ON の保存と初回の描画・位置合わせを済ませる
+        return sim;
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadSimulation.Backend.class)
+    void steadyStateOnlyUpdatesText(LoadSimulation.Backend backend) {
+        LoadSimulation.Churn c = start(backend).run(TICKS, i -> {});
+        assertEquals(0, c.spawns, c.toString());
+        assertEquals(0, c.removes, c.toString());
+        assertEquals(0, c.visibility, c.toString());
+        assertEquals(0, c.saves, c.toString());
+        // 残り時間が減っても止まっているターゲットは動かさない
+        assertEquals(0, c.teleports, c.toString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadSimulation.Backend.class)
+    void gainingAndLosingEffectsDoesNotRespawn(LoadSimulation.Backend backend) {
+        start(backend);
+        int[] events = {0};
+        LoadSimulation.Churn c = sim.run(TICKS, i -> {
+            for (int k = 0; k < 5; k++) {
+                PlayerMock p = sim.players.get(rnd.nextInt(sim.players.size()));
+                PotionEffectType type = TYPES.get(rnd.nextInt(TYPES.size()));
+                switch (k % 3) {
+                    case 0 -> sim.give(p, type, rnd.nextInt(3), 400 + rnd.nextInt(400));
+                    case 1 -> sim.expire(p, type);
+                    default -> sim.give(p, PotionEffectType.HASTE, rnd.nextInt(2), 6000); // 既存の効果の上書き
+                }
+                events[0]++;
+            }
+        });
+        // 行数が1つ増減するたびに、ArmorStand ならその1行分だけ（プールが空なら spawn、あふれたら remove）
+        long lineEvents = backend.perLine ? events[0] : 0;
+        assertTrue(c.spawns <= lineEvents, c.toString());
+        assertTrue(c.removes <= lineEvents, c.toString());
+        assertTrue(c.visibility <= lineEvents * (PLAYERS + 1), c.toString());
+        // 位置を合わせ直すのは行数が変わった時だけ（プールから出した行の配置を含む）
+        assertTrue(c.teleports <= (long) events[0] * (backend.entities(MAX_LINES) + 1), c.toString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadSimulation.Backend.class)
+    void movingOnlyTeleports(LoadSimulation.Backend backend) {
+        start(backend);
+        LoadSimulation.Churn c = sim.run(TICKS, i -> {
+            double d = (i / 20) % 2 == 0 ? 0.25 : -0.25; // 行き来して範囲の外に出ない
+            for (PlayerMock p : sim.players) sim.move(p, d, d);
+        });
+        assertEquals(0, c.spawns, c.toString());
+        assertEquals(0, c.removes, c.toString());
+        assertEquals(0, c.visibility, c.toString());
+        // 移動の追従と内容の反映が同じ tick に重なってもエンティティごとに1回（騎乗表示はクライアント任せ）
+        long perTick = backend.attach.equals("passenger") ? 0 : (long) PLAYERS * backend.entities(LINES);
+        assertTrue(c.maxTeleports <= perTick, c.toString());
+        assertTrue(c.teleports <= perTick * TICKS, c.toString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadSimulation.Backend.class)
+    void joinAndQuitCostIsPerPlayer(LoadSimulation.Backend backend) {
+        start(backend);
+        int[] joins = {0}, quits = {0};
+        LoadSimulation.Churn c = sim.run(TICKS, i -> {
+            if (i % 10 != 0) return;
+            for (int k = 0; k < 5; k++) {
+                sim.quit(sim.players.get(rnd.nextInt(sim.players.size())));
+                quits[0]++;
+                PlayerMock p = sim.join(new Location(sim.world, rnd.nextDouble() * AREA, 64, rnd.nextDouble() * AREA));
+                sim.give(p, TYPES.get(rnd.nextInt(TYPES.size())), 0, 600);
+                joins[0]++;
+            }
+        });
+        int ents = backend.entities(LINES);
+        // 表示エンティティは参加したターゲットの分だけ（退出した分はプールから使い回す）
+        assertTrue(c.spawns <= (long) joins[0] * ents, c.toString());
+        assertTrue(c.removes <= (long) quits[0] * ents, c.toString());
+        // 参加した viewer に全員分・新しいターゲットを全 viewer に、の分だけ
+        assertTrue(c.visibility <= 2L * (joins[0] + quits[0]) * (PLAYERS + 1) * ents, c.toString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadSimulation.Backend.class)
+    void togglingTouchesOnlyThatViewer(LoadSimulation.Backend backend) {
+        start(backend);
+        int[] toggles = {0};
+        LoadSimulation.Churn c = sim.run(TICKS, i -> {
+            if (i % 4 != 0) return;
+            PlayerMock p = sim.players.get(rnd.nextInt(sim.players.size()));
+            sim.toggle(p, (i / 4) % 2 == 1);
+            toggles[0]++;
+        });
+        assertEquals(0, c.spawns, c.toString());
+        assertEquals(0, c.removes, c.toString());
+        assertTrue(c.visibility <= (long) toggles[0] * (PLAYERS + 1) * backend.entities(LINES), c.toString());
+        // 保存は saveIntervalTicks ごとにまとめて1回まで
+        assertTrue(c.saves <= TICKS / SAVE_INTERVAL + 1, c.toString());
+    }
+}
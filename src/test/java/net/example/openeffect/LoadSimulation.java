@@ -0,0 +1,176 @@
+package net.example.openeffect;
+
+import org.bukkit.Location;
+import org.bukkit.event.entity.EntityPotionEffectEvent;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * MockBukkit 上で OpenEffectPlugin を起動し、大勢のプレイヤーを動かす。
+ * 効果の付与・時間切れ・解除はサーバーと同じく EntityPotionEffectEvent で知らせる
+ * （疑似サーバーの効果は tick で減らないので、時間切れもここで起こす）。
+ * 1 tick ごとの表示エンティティ操作は {@link Stats} の回数の差分で {@link Churn} に集める。
+ */
+final class LoadSimulation implements AutoCloseable {
+
+    /** 試す表示方式（display.type / display.attach） */
+    enum Backend {
+        ARMORSTAND("armorstand", "teleport", true),
+        TEXTDISPLAY("textdisplay", "teleport", false),
+        PASSENGER("textdisplay", "passenger", false);
+
+        final String type, attach;
+        /** 1行ごとにエンティティを持つ（行数の増減で spawn / 可視性の送信が起きる） */
+        final boolean perLine;
+
+        Backend(String type, String attach, boolean perLine) {
+            this.type = type;
+            this.attach = attach;
+            this.perLine = perLine;
+        }
+
+        /** lines 行のターゲット1人分の表示エンティティ数 */
+        int entities(int lines) {
+            return perLine ? lines : 1;
+        }
+    }
+
+    /** 1 tick ごとの差分の合計と最大 */
+    static final class Churn {
+        long ticks;
+        long spawns, removes, teleports, visibility, saves;
+        long maxSpawns, maxRemoves, maxTeleports, maxVisibility;
+
+        private void add(long s, long r, long t, long v, long w) {
+            ticks++;
+            spawns += s; removes += r; teleports += t; visibility += v; saves += w;
+            maxSpawns = Math.max(maxSpawns, s);
+            maxRemoves = Math.max(maxRemoves, r);
+            maxTeleports = Math.max(maxTeleports, t);
+            maxVisibility = Math.max(maxVisibility, v);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ticks: spawn=%d(max %d/tick) remove=%d(max %d) teleport=%d(max %d) show/hide=%d(max %d) save=%d",
+                    ticks, spawns, maxSpawns, removes, maxRemoves, teleports, maxTeleports, visibility, maxVisibility, saves);
+        }
+    }
+
+    final Backend backend;
+    final ServerMock server;
+    final OpenEffectPlugin plugin;
+    final WorldMock world;
+    final List<PlayerMock> players = new ArrayList<>();
+    private int joined;
+
+    /** 表示方式と config を上書きして起動し直す（QoS や JFR のように結果が時間で揺れるものは切っておく） */
+    LoadSimulation(Backend backend, Map<String, Object> config) {
+        this.backend = backend;
+        server = MockBukkit.mock();
+        world = server.addSimpleWorld("world");
+        plugin = MockBukkit.load(OpenEffectPlugin.class);
+        plugin.getConfig().set("qos.enabled", false);
+        plugin.getConfig().set("stats.jfr", false);
+        plugin.getConfig().set("display.type", backend.type);
+        plugin.getConfig().set("display.attach", backend.attach);
+        config.forEach(plugin.getConfig()::set);
+        server.getPluginManager().disablePlugin(plugin);
+        server.getPluginManager().enablePlugin(plugin);
+    }
+
+    Stats stats() {
+        return plugin.stats();
+    }
+
+    /** 参加させ、メンバーにして表示を ON にする */
+    PlayerMock join(Location at) {
+        PlayerMock p = server.addPlayer("sim" + (joined++));
+        p.teleport(at);
+        plugin.roles().set(p.getUniqueId(), RoleStorage.MEMBER, true);
+        toggle(p, true);
+        players.add(p);
+        return p;
+    }
+
+    /** 原点付近の square × square ブロックに n 人を並べる（全員が culling.radius の内側） */
+    void populate(int n, double square) {
+        int side = (int) Math.ceil(Math.sqrt(n));
+        double step = square / side;
+        for (int i = 0; i < n; i++)
+            join(new Location(world, (i % side) * step, 64, (i / side) * step));
+    }
+
+    void quit(PlayerMock p) {
+        p.disconnect();
+        players.remove(p);
+    }
+
+    /** /open effect on|off */
+    void toggle(PlayerMock p, boolean on) {
+        p.performCommand("open effect " + (on ? "on" : "off"));
+    }
+
+    void move(PlayerMock p, double dx, double dz) {
+        p.simulatePlayerMove(p.getLocation().add(dx, 0, dz));
+    }
+
+    void give(PlayerMock p, PotionEffectType type, int amplifier, int ticks) {
+        PotionEffect old = p.getPotionEffect(type);
+        PotionEffect eff = new PotionEffect(type, ticks, amplifier);
+        p.addPotionEffect(eff);
+        fire(p, old, eff, old == null ? EntityPotionEffectEvent.Action.ADDED : EntityPotionEffectEvent.Action.CHANGED,
+                EntityPotionEffectEvent.Cause.PLUGIN);
+    }
+
+    /** 時間切れ（サーバーが終了 tick に出すのと同じイベント） */
+    void expire(PlayerMock p, PotionEffectType type) {
+        remove(p, type, EntityPotionEffectEvent.Cause.EXPIRATION);
+    }
+
+    void remove(PlayerMock p, PotionEffectType type, EntityPotionEffectEvent.Cause cause) {
+        PotionEffect old = p.getPotionEffect(type);
+        if (old == null) return;
+        p.removePotionEffect(type);
+        fire(p, old, null, EntityPotionEffectEvent.Action.REMOVED, cause);
+    }
+
+    private void fire(PlayerMock p, PotionEffect old, PotionEffect now,
+                      EntityPotionEffectEvent.Action action, EntityPotionEffectEvent.Cause cause) {
+        server.getPluginManager().callEvent(new EntityPotionEffectEvent(p, old, now, cause, action, true));
+    }
+
+    /** 回数を数えずに進める（参加直後の描画などを落ち着かせる） */
+    void settle(int ticks) {
+        server.getScheduler().performTicks(ticks);
+    }
+
+    /** ticks 回進めて、1 tick ごとの操作回数を集める。beforeTick(i) は各 tick の前に呼ぶ */
+    Churn run(int ticks, IntConsumer beforeTick) {
+        Churn c = new Churn();
+        Stats st = stats();
+        for (int i = 0; i < ticks; i++) {
+            long s = st.spawns.get(), r = st.removes.get(), t = st.teleports.get();
+            long v = st.shows.get() + st.hides.get(), w = st.saves.get();
+            beforeTick.accept(i);
+            server.getScheduler().performOneTick();
+            c.add(st.spawns.get() - s, st.removes.get() - r, st.teleports.get() - t,
+                    st.shows.get() + st.hides.get() - v, st.saves.get() - w);
+        }
+        return c;
+    }
+
+    @Override
+    public void close() {
+        MockBukkit.unmock();
+    }
+}